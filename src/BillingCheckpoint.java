@@ -0,0 +1,259 @@
+/**
+ * This class lets a long billing run that was stopped part way
+ * through carry on from where it stopped instead of starting again.
+ *
+ * The report is written to disk one airline at a time, through
+ * getWriter(). After each airline's section has been written and
+ * synced, a line recording the airline, its total and where its
+ * section starts and ends in the report is added to a checkpoint
+ * file beside the report:
+ *
+ *   KEY,<fingerprint of the data, schedule and billing parameters>
+ *   AA,12345,110,48210
+ *
+ * When a run is started with the same fingerprint, the report is cut
+ * back to the end of the last airline that was recorded, those
+ * airlines are not billed again and their sections are left in the
+ * report as they are. A checkpoint for different files is ignored. The
+ * checkpoint is removed once the run completes.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BillingCheckpoint {
+	public static final String EXTENSION = ".checkpoint";
+
+	private File reportFile;
+	private File checkpointFile;
+	private String key;
+	private Map<String, long[]> completed = new LinkedHashMap<String, long[]>(); // code -> {total, start, end}, in report order
+	private FileOutputStream report;
+	private Writer writer; // buffers the report, flushed at the end of each airline
+	private long sectionStart; // where the airline being written starts in the report
+	private FileOutputStream checkpoint;
+
+
+	/**
+	 * @param reportFilepath the report the run writes
+	 * @param key fingerprint of the run's inputs, e.g. from ResultCache.key
+	 */
+	public BillingCheckpoint(String reportFilepath, String key)
+	{
+		this.reportFile = new File(reportFilepath);
+		this.checkpointFile = new File(reportFilepath + EXTENSION);
+		this.key = key;
+	}
+
+
+	/**
+	 * Picks up a checkpoint left by an earlier run with the same
+	 * fingerprint, or starts the report afresh with the header.
+	 * @param header the report's column headings
+	 * @return the number of airlines that will not be billed again
+	 * @throws IOException
+	 */
+	public int open(String header) throws IOException
+	{
+		long end = readCheckpoint();
+
+		if(end > 0)
+		{
+			// cut off any part of an airline that was being written when the run stopped
+			RandomAccessFile file = new RandomAccessFile(reportFile, "rw");
+			try
+			{
+				file.setLength(end);
+			}
+			finally
+			{
+				file.close();
+			}
+			report = new FileOutputStream(reportFile, true);
+		}
+		else
+		{
+			completed.clear();
+			report = new FileOutputStream(reportFile);
+			report.write(header.getBytes());
+		}
+		sectionStart = report.getChannel().position();
+		writer = new BufferedWriter(new OutputStreamWriter(report));
+
+		// rewrite the checkpoint without any line that was only half written
+		File temp = new File(checkpointFile.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try
+		{
+			out.write(("KEY," + key + "\r\n").getBytes());
+			for(Map.Entry<String, long[]> entry : completed.entrySet())
+			{
+				out.write(formatEntry(entry.getKey(), entry.getValue()));
+			}
+			out.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		checkpoint = new FileOutputStream(checkpointFile, true);
+
+		if(!completed.isEmpty())
+		{
+			System.out.println("Resuming from " + checkpointFile + ": " + completed.size() + " airlines already billed");
+		}
+		return completed.size();
+	}
+
+
+	/**
+	 * Reads the airlines recorded by an earlier run, if it had the
+	 * same fingerprint and its report is still all there.
+	 * @return the end of the last recorded airline in the report, or 0
+	 */
+	private long readCheckpoint() throws IOException
+	{
+		if(!checkpointFile.isFile() || !reportFile.isFile())
+		{
+			return 0;
+		}
+
+		long end = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(checkpointFile));
+		try
+		{
+			String line = reader.readLine();
+			if(line == null || !line.equals("KEY," + key))
+			{
+				return 0;
+			}
+			while((line = reader.readLine()) != null)
+			{
+				String[] fields = line.split(",");
+				if(fields.length != 4)
+				{
+					break; // the run stopped while this line was being written
+				}
+				long[] entry = new long[3];
+				try
+				{
+					for(int i = 0; i < entry.length; i++)
+					{
+						entry[i] = Long.parseLong(fields[i + 1]);
+					}
+				}
+				catch(NumberFormatException e)
+				{
+					break;
+				}
+				if(entry[2] > reportFile.length() || (end > 0 && entry[1] != end))
+				{
+					break; // the report no longer matches
+				}
+				completed.put(fields[0], entry);
+				end = entry[2];
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return end;
+	}
+
+
+	private static byte[] formatEntry(String code, long[] entry)
+	{
+		return (code + "," + entry[0] + "," + entry[1] + "," + entry[2] + "\r\n").getBytes();
+	}
+
+
+	/**
+	 * @param code
+	 * @return true if the airline was billed by an earlier run
+	 */
+	public boolean isComplete(String code)
+	{
+		return completed.containsKey(code);
+	}
+
+
+	/**
+	 * @return the report, after the last airline that was completed; 
+	 * the next airline's rows and total line are written to it and 
+	 * then passed to complete()
+	 */
+	public Writer getWriter()
+	{
+		return writer;
+	}
+
+
+	/**
+	 * Records the airline whose section has just been written as done,
+	 * once the section is safely on disk.
+	 * @param code
+	 * @param total
+	 * @throws IOException
+	 */
+	public void complete(String code, int total) throws IOException
+	{
+		writer.flush();
+		report.getFD().sync();
+
+		long[] entry = {total, sectionStart, report.getChannel().position()};
+		checkpoint.write(formatEntry(code, entry));
+		checkpoint.getFD().sync();
+		completed.put(code, entry);
+		sectionStart = entry[2];
+	}
+
+
+	/**
+	 * Closes the report and removes the checkpoint, as the run is complete.
+	 */
+	public void finish()
+	{
+		close();
+		checkpointFile.delete();
+	}
+
+
+	/**
+	 * Closes the files, leaving the checkpoint in place.
+	 */
+	public void close()
+	{
+		try
+		{
+			if(writer != null)
+			{
+				writer.close();
+			}
+			else if(report != null)
+			{
+				report.close();
+			}
+			if(checkpoint != null)
+			{
+				checkpoint.close();
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
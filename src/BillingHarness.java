@@ -0,0 +1,399 @@
+/**
+ * This class checks a candidate billing engine against the legacy
+ * one, row by row, before the candidate is trusted with real bills.
+ *
+ * Both engines are given the same schedule and the same SITA lines,
+ * either from real files or generated from a seed. Every line whose
+ * result differs (counter, airline, login, logout, billed minutes,
+ * billed hours or charge) is written to Differences.csv. Each engine
+ * is then timed over several runs, and the bytes it allocates are
+ * counted, so that any speed-up is measured on output that is known
+ * to be identical.
+ *
+ * The legacy engine is the original path through the Controller,
+ * billed by LegacyDaySchedule, a frozen copy of the original
+ * DaySchedule, so that later changes to DaySchedule are checked
+ * against it rather than against themselves. By default the candidate
+ * is the current pipeline (LoginRowReader and processStationRow); any
+ * other class implementing BillingHarness.Engine can be named instead.
+ * Both engines leave out the rows the Controller leaves out of the
+ * report: gates, workstations that are not in the map and rows with
+ * nothing to charge.
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class BillingHarness {
+	public static final String DIFF_FILENAME = "Differences.csv";
+	private static final int RUNS = 5; // timed runs per engine, after one warm-up run
+
+	/**
+	 * A way of billing SITA lines. bill() is called with every line
+	 * of the data file except the header and fills in each line's
+	 * result from processRow, or null if the line is not charged.
+	 */
+	public interface Engine {
+		String getName();
+		void prepare(List<Flight> flights);
+		void bill(String[] lines, String[][] results);
+	}
+
+	private List<Flight> flights;
+	private String[] lines; // SITA lines without the header
+
+
+	public BillingHarness(List<Flight> flights, String[] lines)
+	{
+		this.flights = flights;
+		this.lines = lines;
+	}
+
+
+	/**
+	 * Uses a real schedule file and SITA file.
+	 */
+	public static BillingHarness fromFiles(String data, String schedule) throws IOException
+	{
+		List<String> all = Files.readAllLines(Paths.get(data));
+		return new BillingHarness(Controller.readFlights(schedule), all.subList(1, all.size()).toArray(new String[0]));
+	}
+
+
+	/**
+	 * Generates a month of departures and logins that exercise the
+	 * awkward cases: flights close enough for their windows to
+	 * overlap, departures near midnight, gates, airlines with no
+	 * departures, unknown workstations and both year formats.
+	 * @param seed
+	 * @param numFlights
+	 * @param numRows
+	 */
+	public static BillingHarness generate(long seed, int numFlights, int numRows) throws IOException
+	{
+		Random random = new Random(seed);
+		String[] airlines = {"AA", "BW", "LI", "UA", "DL", "B6", "WN", "AC", "BA", "VS", "KL", "WJ"};
+
+		StringBuilder schedule = new StringBuilder();
+		schedule.append(String.join(",", Collections.nCopies(49, "Header"))).append("\n");
+		for(int i = 0; i < numFlights; i++)
+		{
+			String[] record = new String[49];
+			Arrays.fill(record, "x");
+			record[0] = "M" + i;
+			record[42] = airlines[random.nextInt(airlines.length)] + " " + (100 + random.nextInt(900));
+			record[43] = random.nextInt(4) == 0 ? "A" : "D";
+			record[45] = days(random);
+			int minute = random.nextInt(10) == 0 ? random.nextInt(60) : random.nextInt(24 * 60);
+			record[46] = (minute / 60) + ":" + String.format("%02d", minute % 60) + ":00";
+			record[47] = (random.nextBoolean() ? "3/1/2019" : "3/" + (1 + random.nextInt(28)) + "/2019");
+			record[48] = (random.nextBoolean() ? "3/31/2019" : "4/" + (1 + random.nextInt(28)) + "/2019");
+			schedule.append(String.join(",", record)).append("\n");
+		}
+
+		String[] rows = new String[numRows];
+		for(int i = 0; i < numRows; i++)
+		{
+			String workstation;
+			int kind = random.nextInt(20);
+			if(kind == 0)
+			{
+				workstation = String.format("GND1GTG%03d", 1 + random.nextInt(6));
+			}
+			else if(kind == 1)
+			{
+				workstation = "GND2CKB001";
+			}
+			else
+			{
+				workstation = String.format("GND1CK%s%03d", random.nextBoolean() ? "B" : "R", 1 + random.nextInt(30));
+			}
+			String code = random.nextInt(15) == 0 ? "ZZ" : airlines[random.nextInt(airlines.length)];
+			int minute = random.nextInt(24 * 60);
+			String year = random.nextBoolean() ? "2019" : "19";
+			rows[i] = workstation + "," + code + ",3/" + (1 + random.nextInt(31)) + "/" + year + " "
+					+ (minute / 60) + ":" + String.format("%02d", minute % 60) + "," + random.nextInt(600);
+		}
+
+		return new BillingHarness(Controller.readFlights(new StringReader(schedule.toString())), rows);
+	}
+
+
+	private static String days(Random random)
+	{
+		StringBuilder days = new StringBuilder();
+		for(int day = 1; day <= 7; day++)
+		{
+			if(random.nextInt(3) > 0)
+			{
+				days.append(day);
+			}
+		}
+		return days.length() == 0 ? "1" : days.toString();
+	}
+
+
+	/**
+	 * Compares the engines, writes the differing rows and prints a
+	 * summary with the throughput and allocation of each engine.
+	 * @param legacy
+	 * @param candidate
+	 * @return the number of rows whose results differ
+	 */
+	public int run(Engine legacy, Engine candidate) throws IOException
+	{
+		String[][] expected = new String[lines.length][];
+		String[][] actual = new String[lines.length][];
+		legacy.prepare(flights);
+		candidate.prepare(flights);
+		legacy.bill(lines, expected);
+		candidate.bill(lines, actual);
+
+		int differences = 0;
+		int legacyErrors = 0;
+		FileWriter writer = new FileWriter(DIFF_FILENAME);
+		try
+		{
+			writer.write("LINE,INPUT,LEGACY,CANDIDATE\r\n");
+			for(int i = 0; i < lines.length; i++)
+			{
+				if(expected[i] != null && expected[i].length == 1)
+				{
+					legacyErrors++; // the legacy engine threw on this line
+				}
+				if(!Arrays.equals(expected[i], actual[i]))
+				{
+					differences++;
+					writer.write((i + 2) + ",\"" + lines[i] + "\",\"" + describe(expected[i]) + "\",\"" + describe(actual[i]) + "\"\r\n");
+				}
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+
+		System.out.println(lines.length + " rows, " + flights.size() + " departures");
+		System.out.println(differences + " rows differ" + (differences > 0 ? ", see " + DIFF_FILENAME : "")
+				+ " (" + legacyErrors + " rows made the legacy engine throw)");
+		System.out.println(String.format("%-28s%12s%14s%14s", "ENGINE", "MS/RUN", "ROWS/SEC", "BYTES/ROW"));
+		measure(legacy);
+		measure(candidate);
+		return differences;
+	}
+
+
+	/**
+	 * Times the engine over several runs after a warm-up run and
+	 * counts the bytes allocated by this thread while it runs.
+	 */
+	private void measure(Engine engine)
+	{
+		String[][] results = new String[lines.length][];
+		engine.bill(lines, results);
+
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for(int run = 0; run < RUNS; run++)
+		{
+			engine.bill(lines, results);
+		}
+		double millis = (System.nanoTime() - start) / 1e6 / RUNS;
+		bytes = allocatedBytes() - bytes;
+
+		System.out.println(String.format("%-28s%12.1f%14.0f%14s", engine.getName(), millis, lines.length / (millis / 1000),
+				bytes < 0 ? "n/a" : String.format("%.0f", (double)bytes / RUNS / Math.max(1, lines.length))));
+	}
+
+
+	/**
+	 * @return bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+	 */
+	private static long allocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+
+	private static String describe(String[] result)
+	{
+		return (result == null) ? "not billed" : String.join(" ", result);
+	}
+
+
+	/**
+	 * The original billing path: split, parse with DateTimeFormatter,
+	 * LegacyDaySchedule.processRow(String[]), then drop gates and rows
+	 * with no charge as the original Controller did, and unknown
+	 * workstations as the current one does. Lines it throws on get a
+	 * one-element result naming the exception.
+	 */
+	public static class LegacyEngine implements Engine {
+		private LegacyDaySchedule[] schedules;
+
+
+		public String getName()
+		{
+			return "legacy processRow";
+		}
+
+
+		public void prepare(List<Flight> flights)
+		{
+			schedules = new LegacyDaySchedule[7];
+			for(int i = 0; i < schedules.length; i++)
+			{
+				schedules[i] = new LegacyDaySchedule();
+			}
+			for(Flight flight : flights)
+			{
+				for(int day : flight.getDaysOfOperation())
+				{
+					schedules[day-1].add(new Flight(flight.getRawData()));
+				}
+			}
+		}
+
+
+		public void bill(String[] lines, String[][] results)
+		{
+			DateTimeFormatter formatter = DateTimeFormatter.ofPattern("M/d/yyyy H:mm");
+			DateTimeFormatter formatter2 = DateTimeFormatter.ofPattern("M/d/yy H:mm");
+
+			for(int i = 0; i < lines.length; i++)
+			{
+				results[i] = null;
+				try
+				{
+					String[] tempArray = lines[i].split(",");
+					if((tempArray[0].charAt(0) == 'W' || tempArray[0].charAt(0) == 'G') && tempArray[1].length() < 4)
+					{
+						LocalDateTime dateTime;
+						try
+						{
+							dateTime = LocalDateTime.parse(tempArray[2], formatter);
+						}
+						catch(java.time.format.DateTimeParseException e)
+						{
+							dateTime = LocalDateTime.parse(tempArray[2], formatter2);
+						}
+						int dayOfWeek = dateTime.getDayOfWeek().getValue()-1;
+						String[] chargedItems = schedules[dayOfWeek].processRow(tempArray);
+						//workstations that are not in the map are now rejected rather than billed
+						if(chargedItems != null && Integer.parseInt(chargedItems[6]) > 0 
+								&& !(chargedItems[0].charAt(0) == 'G') && !chargedItems[0].equals(WorkstationMap.INVALID))
+						{
+							results[i] = chargedItems;
+						}
+					}
+				}
+				catch(RuntimeException e)
+				{
+					results[i] = new String[] {e.getClass().getSimpleName()};
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * The current pipeline: LoginRowReader validates and parses the
+	 * line, the WorkstationMap resolves the counter and its class, and
+	 * DaySchedule.processStationRow bills it as the Controller does,
+	 * keeping only rows with a charge.
+	 */
+	public static class PipelineEngine implements Engine {
+		private DaySchedule[] schedules;
+
+
+		public String getName()
+		{
+			return "LoginRowReader pipeline";
+		}
+
+
+		public void prepare(List<Flight> flights)
+		{
+			schedules = Controller.buildSchedules(flights, BillingRules.DEFAULT);
+		}
+
+
+		public void bill(String[] lines, String[][] results)
+		{
+			LoginRowReader reader = new LoginRowReader((String)null, null);
+			LoginLog log = new LoginLog();
+
+			for(int i = 0; i < lines.length; i++)
+			{
+				results[i] = null;
+				try
+				{
+					int row = reader.readLine(lines[i], i + 2, log);
+					if(row >= 0)
+					{
+						LocalDateTime dateTime = log.getLogin(row);
+						String[] chargedItems = schedules[dateTime.getDayOfWeek().getValue()-1].processStationRow(
+								log.getWorkstationClass(row), log.getCounter(row), log.getCode(row), dateTime, log.getDuration(row));
+						if(chargedItems != null && Integer.parseInt(chargedItems[6]) > 0)
+						{
+							results[i] = chargedItems;
+						}
+					}
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Runs the harness from the command line.
+	 * @param args  generate <seed> <flights> <rows> [candidate class]
+	 *          or  <data file> <schedule file> [candidate class]
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		BillingHarness harness;
+		String candidateClass;
+		if(args.length >= 4 && args[0].equals("generate"))
+		{
+			harness = generate(Long.parseLong(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			candidateClass = (args.length > 4) ? args[4] : null;
+		}
+		else if(args.length >= 2)
+		{
+			harness = fromFiles(args[0], args[1]);
+			candidateClass = (args.length > 2) ? args[2] : null;
+		}
+		else
+		{
+			System.out.println("Usage: generate <seed> <flights> <rows> [candidate class]");
+			System.out.println("   or: <data file> <schedule file> [candidate class]");
+			return;
+		}
+
+		Engine candidate = (candidateClass == null) ? new PipelineEngine()
+				: (Engine)Class.forName(candidateClass).getDeclaredConstructor().newInstance();
+		int differences = harness.run(new LegacyEngine(), candidate);
+		System.exit(differences == 0 ? 0 : 1);
+	}
+}
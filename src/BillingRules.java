@@ -0,0 +1,130 @@
+/**
+ * This class holds the values that the charges are calculated 
+ * from: the grace period either side of a flight's allotted time,
+ * the hourly charge and the time an airline is allowed to be 
+ * logged in before a departure. Instances cannot be changed, so 
+ * one set of rules can be shared by any number of DaySchedules.
+ * 
+ * Gates are not billed unless the rules give them a time allowed
+ * of their own, which is normally the shorter GATE_TIMEALLOWED.
+ */
+
+import java.util.EnumSet;
+import java.util.Set;
+
+public final class BillingRules {
+	public static final BillingRules DEFAULT = new BillingRules(15, 10, 180);
+	public static final int GATE_TIMEALLOWED = 45;
+	private static final int GATES_NOT_BILLED = -1;
+	
+	private final int gracePeriod; // minutes allowed before and after the allotted time
+	private final int hourlyCharge;
+	private final int timeAllowed; // minutes before a departure that can be logged in free of charge
+	private final int gateTimeAllowed; // the same for gates, or GATES_NOT_BILLED
+	
+	
+	public BillingRules(int gracePeriod, int hourlyCharge, int timeAllowed)
+	{
+		this(gracePeriod, hourlyCharge, timeAllowed, GATES_NOT_BILLED);
+	}
+	
+	
+	private BillingRules(int gracePeriod, int hourlyCharge, int timeAllowed, int gateTimeAllowed)
+	{
+		this.gracePeriod = gracePeriod;
+		this.hourlyCharge = hourlyCharge;
+		this.timeAllowed = timeAllowed;
+		this.gateTimeAllowed = gateTimeAllowed;
+	}
+	
+	
+	/**
+	 * Reads rules written as  grace:charge:allowed  e.g.  20:12:180
+	 * or  grace:charge:allowed:gate allowed  e.g.  15:10:180:45
+	 * to bill gates as well.
+	 * @param text
+	 * @return the rules
+	 * @throws IllegalArgumentException if the text is not three or four whole numbers
+	 */
+	public static BillingRules parse(String text)
+	{
+		String[] values = text.split(":");
+		if(values.length != 3 && values.length != 4)
+		{
+			throw new IllegalArgumentException("Expected grace:charge:allowed[:gate allowed] but got " + text);
+		}
+		BillingRules rules = new BillingRules(Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()), 
+				Integer.parseInt(values[2].trim()));
+		return (values.length == 4) ? rules.withGates(Integer.parseInt(values[3].trim())) : rules;
+	}
+	
+	
+	/**
+	 * @param gateTimeAllowed minutes before a departure that a gate 
+	 * can be logged in free of charge
+	 * @return a copy of these rules that bills gates as well
+	 */
+	public BillingRules withGates(int gateTimeAllowed)
+	{
+		if(gateTimeAllowed < 0)
+		{
+			throw new IllegalArgumentException("The gate time allowed cannot be negative");
+		}
+		return new BillingRules(gracePeriod, hourlyCharge, timeAllowed, gateTimeAllowed);
+	}
+
+
+	public int getGracePeriod() {
+		return gracePeriod;
+	}
+
+
+	public int getHourlyCharge() {
+		return hourlyCharge;
+	}
+
+
+	public int getTimeAllowed() {
+		return timeAllowed;
+	}
+
+
+	public boolean isBillingGates() {
+		return gateTimeAllowed != GATES_NOT_BILLED;
+	}
+
+
+	public int getGateTimeAllowed() {
+		return gateTimeAllowed;
+	}
+	
+	
+	/**
+	 * @return the classes of workstation whose rows are billed
+	 */
+	public Set<WorkstationClass> getBilledClasses()
+	{
+		Set<WorkstationClass> classes = EnumSet.of(WorkstationClass.CHECK_IN, WorkstationClass.OTHER);
+		if(isBillingGates())
+		{
+			classes.add(WorkstationClass.GATE);
+		}
+		return classes;
+	}
+	
+	
+	/**
+	 * @return the short form used for column headings, e.g. 15:10:180
+	 */
+	public String getLabel()
+	{
+		return gracePeriod + ":" + hourlyCharge + ":" + timeAllowed + (isBillingGates() ? ":" + gateTimeAllowed : "");
+	}
+	
+	
+	public String toString()
+	{
+		return "GRACEPERIOD=" + gracePeriod + ",HOURLYCHARGE=" + hourlyCharge + ",TIMEALLOWED=" + timeAllowed
+				+ (isBillingGates() ? ",GATETIMEALLOWED=" + gateTimeAllowed : "");
+	}
+}
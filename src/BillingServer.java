@@ -0,0 +1,323 @@
+/**
+ * This class runs a local HTTP service that bills SITA login
+ * extracts against a flight schedule that is loaded once, when
+ * the service starts, and kept in memory between requests.
+ *
+ *   POST /bill      body: the SITA CSV, optionally sent with
+ *                   Content-Encoding: gzip; response: the billing report,
+ *                   streamed with chunked encoding as each airline is billed
+ *   POST /schedule  body: a schedule CSV to bill later requests against
+ *   GET  /metrics   request counts and latency percentiles
+ *
+ * Each request is handled on its own virtual thread when the JVM
+ * supports them and on a pooled thread otherwise. A semaphore caps
+ * how many billing requests run at once; requests that cannot get
+ * a permit in time are turned away with 503.
+ * 
+ * A new schedule is swapped in as a whole; requests already being 
+ * billed finish against the schedule they started with.
+ *
+ * Since the report is sent while it is billed, a run that fails part 
+ * way through cannot be answered with an error status any more; the 
+ * connection is dropped instead, so the client sees an incomplete 
+ * response rather than a short report.
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class BillingServer {
+	private static final int WAIT_SECONDS = 30; // how long a request may queue for a permit
+
+	private final ScheduleRegistry schedules; // the snapshot new requests are billed against
+	private final Semaphore permits;
+	private final int maxConcurrent;
+	private final LatencyMetrics metrics = new LatencyMetrics();
+	private HttpServer server;
+	private ExecutorService executor;
+
+
+	public BillingServer(String scheduleFilepath, int port, int maxConcurrent) throws IOException
+	{
+		schedules = new ScheduleRegistry(ScheduleSnapshot.read(scheduleFilepath));
+		this.maxConcurrent = maxConcurrent;
+		permits = new Semaphore(maxConcurrent, true);
+
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext("/bill", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				handleBill(exchange);
+			}
+		});
+		server.createContext("/schedule", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				handleSchedule(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				send(exchange, 200, "text/plain", metrics.toString());
+			}
+		});
+	}
+
+
+	public void start()
+	{
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.start();
+		System.out.println("Billing service listening on http://localhost:" + server.getAddress().getPort()
+				+ " with " + schedules.current().getFlights().size() + " departures loaded");
+	}
+
+
+	public void stop()
+	{
+		server.stop(1);
+		executor.shutdown();
+	}
+
+
+	/**
+	 * Bills the uploaded extract and streams the report back, each 
+	 * airline's section being sent as soon as it has been billed. 
+	 * The rejected row count is sent as a header before billing starts.
+	 */
+	private void handleBill(HttpExchange exchange) throws IOException
+	{
+		if(!exchange.getRequestMethod().equals("POST"))
+		{
+			send(exchange, 405, "text/plain", "POST the SITA CSV to /bill\n");
+			return;
+		}
+
+		long start = System.nanoTime();
+		boolean acquired = false;
+		try
+		{
+			acquired = permits.tryAcquire(WAIT_SECONDS, TimeUnit.SECONDS);
+			if(!acquired)
+			{
+				metrics.rejected();
+				exchange.getResponseHeaders().set("Retry-After", Integer.toString(WAIT_SECONDS));
+				send(exchange, 503, "text/plain", "Too many billing requests in progress\n");
+				return;
+			}
+
+			ScheduleSnapshot snapshot = schedules.current();
+			LoginRowReader reader;
+			LoginLog log;
+			try
+			{
+				InputStream body = exchange.getRequestBody();
+				if("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding")))
+				{
+					body = new GZIPInputStream(body, 64 * 1024);
+				}
+				reader = new LoginRowReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+				reader.setWorkstationClasses(snapshot.getRules().getBilledClasses());
+				log = reader.read();
+			}
+			catch(IOException e)
+			{
+				//e.g. a body that is not gzip or was cut off
+				metrics.failed();
+				send(exchange, 400, "text/plain", "Could not read the upload: " + e.getMessage() + "\n");
+				return;
+			}
+			exchange.getResponseHeaders().set("X-Rejected-Rows", Integer.toString(reader.getRejectTotal()));
+			exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0); // chunked
+			Writer report = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 64 * 1024);
+			new Controller(log, snapshot, report);
+			report.close();
+			metrics.record(System.nanoTime() - start);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			send(exchange, 503, "text/plain", "Interrupted\n");
+		}
+		catch(RuntimeException e)
+		{
+			e.printStackTrace();
+			metrics.failed();
+			if(exchange.getResponseCode() > 0)
+			{
+				throw e; // part of the report has been sent, so let the server drop the connection
+			}
+			send(exchange, 500, "text/plain", "Billing failed: " + e + "\n");
+		}
+		finally
+		{
+			if(acquired)
+			{
+				permits.release();
+			}
+		}
+	}
+
+
+	/**
+	 * Reads the uploaded schedule into a new snapshot and swaps it in.
+	 */
+	private void handleSchedule(HttpExchange exchange) throws IOException
+	{
+		if(!exchange.getRequestMethod().equals("POST"))
+		{
+			send(exchange, 405, "text/plain", "POST the schedule CSV to /schedule\n");
+			return;
+		}
+		
+		try
+		{
+			ScheduleSnapshot snapshot = ScheduleSnapshot.read(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+			schedules.replace(snapshot);
+			send(exchange, 200, "text/plain", snapshot.getFlights().size() + " departures loaded\n");
+		}
+		catch(IOException | RuntimeException e)
+		{
+			//e.g. a body that was cut off or is not a schedule
+			e.printStackTrace();
+			send(exchange, 400, "text/plain", "Could not read the schedule: " + e + "\n");
+		}
+	}
+
+
+	/**
+	 * Sends a short response that is already complete, with chunked 
+	 * encoding.
+	 */
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException
+	{
+		drain(exchange.getRequestBody());
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, 0);
+		OutputStream out = exchange.getResponseBody();
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		for(int offset = 0; offset < bytes.length; offset += 64 * 1024)
+		{
+			out.write(bytes, offset, Math.min(64 * 1024, bytes.length - offset));
+		}
+		out.close();
+	}
+
+
+	/**
+	 * Discards any unread upload so the connection can be reused.
+	 */
+	private static void drain(InputStream request)
+	{
+		byte[] buffer = new byte[8192];
+		try
+		{
+			while(request.read(buffer) >= 0)
+			{
+			}
+		}
+		catch(IOException e)
+		{
+			// already read to the end and closed
+		}
+	}
+
+
+	/**
+	 * Uses a virtual thread per request where the JVM has them
+	 * (Java 21 and later), otherwise a cached thread pool.
+	 */
+	private static ExecutorService newRequestExecutor()
+	{
+		try
+		{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+
+	/**
+	 * Keeps the latencies of the most recent billing requests
+	 * along with running counts.
+	 */
+	private class LatencyMetrics {
+		private long[] recent = new long[1024]; // nanoseconds, used as a ring buffer
+		private long completed, failed, rejected, totalNanos, maxNanos;
+
+
+		synchronized void record(long nanos)
+		{
+			recent[(int)(completed % recent.length)] = nanos;
+			completed++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+
+		synchronized void failed()
+		{
+			failed++;
+		}
+
+
+		synchronized void rejected()
+		{
+			rejected++;
+		}
+
+
+		public synchronized String toString()
+		{
+			int count = (int)Math.min(completed, recent.length);
+			long[] sorted = Arrays.copyOf(recent, count);
+			Arrays.sort(sorted);
+
+			StringBuilder builder = new StringBuilder();
+			builder.append("completed " + completed + "\n");
+			builder.append("failed " + failed + "\n");
+			builder.append("rejected " + rejected + "\n");
+			builder.append("in_flight " + (maxConcurrent - permits.availablePermits()) + "\n");
+			builder.append("max_concurrent " + maxConcurrent + "\n");
+			builder.append(String.format("mean_ms %.2f\n", completed == 0 ? 0.0 : totalNanos / 1e6 / completed));
+			builder.append(String.format("p50_ms %.2f\n", percentile(sorted, 0.50)));
+			builder.append(String.format("p95_ms %.2f\n", percentile(sorted, 0.95)));
+			builder.append(String.format("p99_ms %.2f\n", percentile(sorted, 0.99)));
+			builder.append(String.format("max_ms %.2f\n", maxNanos / 1e6));
+			return builder.toString();
+		}
+
+
+		private double percentile(long[] sorted, double fraction)
+		{
+			if(sorted.length == 0)
+			{
+				return 0;
+			}
+			return sorted[(int)Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))] / 1e6;
+		}
+	}
+}
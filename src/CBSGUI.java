@@ -1,6 +1,9 @@
 /**
  * This class sets up the GUI for the SITA
- * check-in counter billing application
+ * check-in counter billing application.
+ * A run bills the files in the background while a sampled preview
+ * of the airline totals is shown, which the exact totals replace
+ * when the run finishes.
  */
 
 import java.awt.BorderLayout;
@@ -9,21 +12,26 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 public class CBSGUI extends JFrame implements ActionListener{
-	private JButton chooseDataButton, chooseScheduleButton, runButton;
+	private JButton chooseDataButton, chooseScheduleButton, runButton, viewButton;
 	private JTextField dataTextField, scheduleTextField;
+	private JCheckBox invoiceCheckBox, utilizationCheckBox, gateCheckBox;
 	private String chosenDataFile = "";
 	private String chosenScheduleFile = "";
 	private Controller parser;
+	private ResultCache cache = new ResultCache();
 	
 	
 	public CBSGUI()
@@ -31,7 +39,7 @@ public class CBSGUI extends JFrame implements ActionListener{
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		setTitle("Select Files");
 		setLocation(200,200);
-		setSize(600, 170);
+		setSize(820, 170);
 		setLocationRelativeTo(null);		
 		layoutPanels();	
 	}
@@ -90,21 +98,30 @@ public class CBSGUI extends JFrame implements ActionListener{
 	private void layoutBottom()
 	{
 		JPanel bottom = new JPanel();
+		invoiceCheckBox = new JCheckBox("One invoice file per airline");
+		bottom.add(invoiceCheckBox);
+		utilizationCheckBox = new JCheckBox("Utilization reports");
+		bottom.add(utilizationCheckBox);
+		gateCheckBox = new JCheckBox("Bill gates (" + BillingRules.GATE_TIMEALLOWED + " min)");
+		bottom.add(gateCheckBox);
 		runButton = new JButton("Run");
 		runButton.addActionListener(this);
 		bottom.add(runButton);
+		viewButton = new JButton("View report...");
+		viewButton.addActionListener(this);
+		bottom.add(viewButton);
 		add(bottom, BorderLayout.SOUTH);
 	}
 	
 	/**
 	 * Launches the file chooser window that allows the user
 	 * to select the required data and schedule files.
-	 * Overloaded method that takes two file extension arguments. 
+	 * Overloaded method that takes several file extension arguments. 
 	 */
-	private String launchFileChooser(String type, String extension1, String extension2)
+	private String launchFileChooser(String type, String... extensions)
 	{
 		JFileChooser chooser = new JFileChooser();
-	    FileNameExtensionFilter filter = new FileNameExtensionFilter(type, extension1, extension2);
+	    FileNameExtensionFilter filter = new FileNameExtensionFilter(type, extensions);
 	    chooser.setFileFilter(filter);	     
 	    chooser.showOpenDialog(CBSGUI.this);
 	    
@@ -150,6 +167,109 @@ public class CBSGUI extends JFrame implements ActionListener{
 	}
 	
 	
+	/**
+	 * Bills the chosen files on a background thread, showing a sampled
+	 * preview of the totals until the exact ones are ready.
+	 */
+	private void run()
+	{
+		final String data = chosenDataFile;
+		final String schedule = chosenScheduleFile;
+		final boolean invoices = invoiceCheckBox.isSelected();
+		final boolean utilization = utilizationCheckBox.isSelected();
+		final BillingRules rules = gateCheckBox.isSelected() 
+				? BillingRules.DEFAULT.withGates(BillingRules.GATE_TIMEALLOWED) : BillingRules.DEFAULT;
+		final TotalsWindow totals = new TotalsWindow();
+		totals.setVisible(true);
+		runButton.setEnabled(false);
+		
+		final SwingWorker<ResultStore, Void> full = new SwingWorker<ResultStore, Void>() {
+			protected ResultStore doInBackground()
+			{
+				return bill(data, schedule, invoices, utilization, rules);
+			}
+			
+			protected void done()
+			{
+				runButton.setEnabled(true);
+				System.out.println("Program executed");
+				try
+				{
+					ResultStore results = get();
+					if(results != null)
+					{
+						totals.showExact(results.totalsByAirline());
+						new ReportViewer(results).setVisible(true);
+					}
+				}
+				catch(InterruptedException | ExecutionException x)
+				{
+					x.printStackTrace();
+				}
+			}
+		};
+		
+		SwingWorker<SampledPreview, Void> preview = new SwingWorker<SampledPreview, Void>() {
+			protected SampledPreview doInBackground() throws IOException
+			{
+				return SampledPreview.bill(data, schedule, rules);
+			}
+			
+			protected void done()
+			{
+				if(full.isDone())
+				{
+					return; // the exact totals are already shown
+				}
+				try
+				{
+					totals.showEstimates(get());
+				}
+				catch(InterruptedException | ExecutionException x)
+				{
+					x.printStackTrace();
+				}
+			}
+		};
+		
+		preview.execute();
+		full.execute();
+	}
+	
+	
+	/**
+	 * Bills the files, with the chosen options.
+	 * @return the charged rows, or null if the files could not be billed
+	 */
+	private ResultStore bill(String data, String schedule, boolean invoices, boolean utilization, BillingRules rules)
+	{
+		ResultStore results = null;
+		if(invoices || utilization || rules.isBillingGates())
+		{
+			parser = new Controller(data, schedule, invoices, rules, utilization);
+			results = parser.getResults();
+			
+			if(utilization)
+			{
+				parser.getUtilization().writeReports();
+			}
+		}
+		else
+		{
+			try
+			{
+				//re-running the same files returns the stored report
+				results = cache.bill(data, schedule);
+			}
+			catch(IOException i)
+			{
+				i.printStackTrace();
+			}
+		}
+		return results;
+	}
+	
+	
 	/**
 	 * handles all click events
 	 */
@@ -160,7 +280,7 @@ public class CBSGUI extends JFrame implements ActionListener{
 			try
 			{
 				//display only CSV files and replace the back slashes from Windows file system
-				chosenDataFile = launchFileChooser("CSV", "csv").replaceAll("\\\\", "/");
+				chosenDataFile = launchFileChooser("CSV or compressed CSV", "csv", "gz", "zip").replaceAll("\\\\", "/");
 			}
 			catch(NullPointerException n)
 			{
@@ -177,9 +297,8 @@ public class CBSGUI extends JFrame implements ActionListener{
 		{
 			try
 			{
-				//display only CSV files and replace the back slashes from Windows file system				
-				chosenScheduleFile = launchFileChooser("CSV", "csv").replaceAll("\\\\", "/");
-				//chosenScheduleFile = launchFileChooser("Excel", "xlsx", "xls").replaceAll("\\\\", "/");
+				//display CSV and Excel files and replace the back slashes from Windows file system				
+				chosenScheduleFile = launchFileChooser("CSV or Excel", "csv", "xlsx").replaceAll("\\\\", "/");
 			}
 			catch(NullPointerException n)
 			{
@@ -194,9 +313,32 @@ public class CBSGUI extends JFrame implements ActionListener{
 		}
 		if(e.getSource() == runButton)
 		{
-			parser = new Controller(chosenDataFile, chosenScheduleFile);
-			System.out.println("Program executed");
-			System.exit(0);
+			run();
+		}
+		if(e.getSource() == viewButton)
+		{
+			String reportFile;
+			try
+			{
+				//open a previously written report instead of re-running
+				reportFile = launchFileChooser("CSV", "csv");
+			}
+			catch(NullPointerException n)
+			{
+				reportFile = "";
+			}
+			
+			if(!reportFile.equals(""))
+			{
+				try
+				{
+					new ReportViewer(ResultStore.load(reportFile)).setVisible(true);
+				}
+				catch(IOException i)
+				{
+					i.printStackTrace();
+				}
+			}
 		}
 	}
 
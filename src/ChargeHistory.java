@@ -0,0 +1,512 @@
+/**
+ * This class keeps the charged rows of every finished billing run
+ * on disk, so that year to date figures and month by month trends
+ * can be read back without billing any month again.
+ *
+ * The store is a directory of column files that are only ever
+ * appended to, one 4-byte little-endian int per row:
+ *
+ *   airline.bin  id in airlines.txt     counter.bin  id in counters.txt
+ *   date.bin     epoch day              minutes.bin  billed minutes
+ *   charge.bin   charge
+ *
+ * The rows of a run are appended month by month, so each month is
+ * one contiguous block of rows. months.csv is the index: the number
+ * of rows that have been committed and, for each month, its block of
+ * rows and its total charge. The index is rewritten last, so a run
+ * that stops part way through an append leaves the store as it was.
+ *
+ * A run is appended as the month that most of its rows are in, by
+ * the same rule as LoginLog.getMonth(), and replaces that month if it
+ * is already in the store. Rows of the run from any other month, such
+ * as a session logged in just before midnight on the last day of the
+ * month before, are left out and counted rather than being allowed to
+ * replace a month that was appended by its own run.
+ *
+ * Queries map only the blocks of the columns they read.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ChargeHistory {
+	public static final String DEFAULT_DIRECTORY = ".cbshistory";
+	private static final String INDEX_FILENAME = "months.csv";
+	private static final String[] COLUMNS = {"airline", "date", "counter", "minutes", "charge"};
+	private static final int AIRLINE = 0, DATE = 1, COUNTER = 2, MINUTES = 3, CHARGE = 4;
+
+	private File directory;
+	private long rows; // rows committed to the columns
+	private TreeMap<YearMonth, long[]> months = new TreeMap<YearMonth, long[]>(); // month -> {first row, row count, total charge}
+	private List<String> airlines = new ArrayList<String>(); // indexed by airline id
+	private List<String> counters = new ArrayList<String>(); // indexed by counter id
+	private int skippedRows; // rows of the last append that were outside its month
+
+
+	/**
+	 * Opens the store in the given directory, creating it if needed.
+	 * @param directory
+	 * @throws IOException if the index cannot be read
+	 */
+	public ChargeHistory(String directory) throws IOException
+	{
+		this.directory = new File(directory);
+		this.directory.mkdirs();
+		readIndex();
+		readDictionary("airlines.txt", airlines);
+		readDictionary("counters.txt", counters);
+	}
+
+
+	private void readIndex() throws IOException
+	{
+		File index = new File(directory, INDEX_FILENAME);
+		if(!index.isFile())
+		{
+			return;
+		}
+
+		BufferedReader reader = new BufferedReader(new FileReader(index));
+		try
+		{
+			String line = reader.readLine(); // ROWS,<committed rows>
+			rows = Long.parseLong(line.substring(line.indexOf(',') + 1).trim());
+			reader.readLine(); // column headings
+			while((line = reader.readLine()) != null)
+			{
+				String[] fields = line.split(",");
+				months.put(YearMonth.parse(fields[0]), new long[] {Long.parseLong(fields[1]),
+						Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+			}
+		}
+		catch(RuntimeException e)
+		{
+			throw new IOException("The history index " + index + " could not be read", e);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+
+	private void readDictionary(String filename, List<String> names) throws IOException
+	{
+		File file = new File(directory, filename);
+		if(file.isFile())
+		{
+			names.addAll(Files.readAllLines(file.toPath()));
+		}
+	}
+
+
+	/**
+	 * Appends the rows of a finished run as the month that most of 
+	 * them are in, replacing that month if it is already in the store. 
+	 * Rows from other months are left out; see getSkippedRows().
+	 * @param results
+	 * @return the month that was appended, or null if the run has no rows
+	 * @throws IOException
+	 */
+	public synchronized YearMonth append(ResultStore results) throws IOException
+	{
+		// find the run's month
+		Map<YearMonth, Integer> counts = new HashMap<YearMonth, Integer>();
+		for(int row = 0; row < results.size(); row++)
+		{
+			counts.merge(YearMonth.from(results.getDate(row)), 1, Integer::sum);
+		}
+		YearMonth month = LoginLog.mostCommon(counts);
+		skippedRows = results.size() - ((month == null) ? 0 : counts.get(month));
+		if(month == null)
+		{
+			return null;
+		}
+		List<Integer> monthRows = new ArrayList<Integer>();
+		for(int row = 0; row < results.size(); row++)
+		{
+			if(YearMonth.from(results.getDate(row)).equals(month))
+			{
+				monthRows.add(row);
+			}
+		}
+
+		// translate the run's airline and counter ids to the store's
+		int[] airlineIds = dictionaryIds(results.getAirlines(), airlines, "airlines.txt");
+		int[] counterIds = dictionaryIds(results.getCounters(), counters, "counters.txt");
+
+		FileChannel[] channels = openColumns();
+		try
+		{
+			ByteBuffer[] buffers = new ByteBuffer[COLUMNS.length];
+			for(int c = 0; c < buffers.length; c++)
+			{
+				buffers[c] = ByteBuffer.allocate(monthRows.size() * 4).order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			long total = 0;
+			for(int row : monthRows)
+			{
+				buffers[AIRLINE].putInt(airlineIds[results.getAirlineId(row)]);
+				buffers[DATE].putInt(results.getEpochDay(row));
+				buffers[COUNTER].putInt(counterIds[results.getCounterId(row)]);
+				buffers[MINUTES].putInt(results.getBilledMinutes(row));
+				buffers[CHARGE].putInt(results.getCharge(row));
+				total += results.getCharge(row);
+			}
+			for(int c = 0; c < buffers.length; c++)
+			{
+				buffers[c].flip();
+				while(buffers[c].hasRemaining())
+				{
+					channels[c].write(buffers[c]);
+				}
+			}
+
+			for(FileChannel channel : channels)
+			{
+				channel.force(false);
+			}
+			months.put(month, new long[] {rows, monthRows.size(), total});
+			rows += monthRows.size();
+		}
+		finally
+		{
+			for(FileChannel channel : channels)
+			{
+				channel.close();
+			}
+		}
+
+		writeIndex();
+		return month;
+	}
+
+
+	/**
+	 * @return the number of rows of the last append that were left out 
+	 * because they were not in the run's month
+	 */
+	public int getSkippedRows()
+	{
+		return skippedRows;
+	}
+
+
+	/**
+	 * Opens each column for appending after the committed rows,
+	 * dropping anything left by an append that did not finish.
+	 */
+	private FileChannel[] openColumns() throws IOException
+	{
+		FileChannel[] channels = new FileChannel[COLUMNS.length];
+		for(int c = 0; c < COLUMNS.length; c++)
+		{
+			channels[c] = new RandomAccessFile(column(c), "rw").getChannel();
+			channels[c].truncate(rows * 4);
+			channels[c].position(rows * 4);
+		}
+		return channels;
+	}
+
+
+	/**
+	 * Looks up the store's id for each name, adding new names to the
+	 * dictionary file.
+	 */
+	private int[] dictionaryIds(List<String> names, List<String> dictionary, String filename) throws IOException
+	{
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for(int i = 0; i < dictionary.size(); i++)
+		{
+			ids.put(dictionary.get(i), i);
+		}
+
+		int[] result = new int[names.size()];
+		FileWriter writer = null;
+		try
+		{
+			for(int i = 0; i < names.size(); i++)
+			{
+				Integer id = ids.get(names.get(i));
+				if(id == null)
+				{
+					if(writer == null)
+					{
+						writer = new FileWriter(new File(directory, filename), StandardCharsets.UTF_8, true); // read back as UTF-8
+					}
+					id = dictionary.size();
+					dictionary.add(names.get(i));
+					ids.put(names.get(i), id);
+					writer.write(names.get(i) + "\n");
+				}
+				result[i] = id;
+			}
+		}
+		finally
+		{
+			if(writer != null)
+			{
+				writer.close();
+			}
+		}
+		return result;
+	}
+
+
+	private void writeIndex() throws IOException
+	{
+		File temp = new File(directory, INDEX_FILENAME + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try
+		{
+			StringBuilder builder = new StringBuilder();
+			builder.append("ROWS," + rows + "\n");
+			builder.append("MONTH,FIRST ROW,ROWS,CHARGE\n");
+			for(Map.Entry<YearMonth, long[]> month : months.entrySet())
+			{
+				long[] entry = month.getValue();
+				builder.append(month.getKey() + "," + entry[0] + "," + entry[1] + "," + entry[2] + "\n");
+			}
+			out.write(builder.toString().getBytes());
+			out.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(temp.toPath(), new File(directory, INDEX_FILENAME).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	private File column(int c)
+	{
+		return new File(directory, COLUMNS[c] + ".bin");
+	}
+
+
+	/**
+	 * Maps one month's block of a column.
+	 */
+	private IntBuffer map(FileChannel channel, long[] month) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, month[0] * 4, month[1] * 4)
+				.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+
+
+	/**
+	 * Totals each airline's charges from the start of the year to the
+	 * given date. Whole months are read from the airline and charge
+	 * columns only; the date column is also read for the last month.
+	 * @param upTo the last date to include
+	 * @return total charge for each airline, by airline code, which is 
+	 * empty if the store has no rows for the year
+	 * @throws IOException
+	 */
+	public Map<String, Long> yearToDate(LocalDate upTo) throws IOException
+	{
+		Map<String, Long> result = new TreeMap<String, Long>();
+		long[] totals = new long[airlines.size()];
+		YearMonth last = YearMonth.from(upTo);
+		boolean wholeMonth = upTo.equals(last.atEndOfMonth());
+		int lastDay = (int)upTo.toEpochDay();
+		Map<YearMonth, long[]> year = months.subMap(YearMonth.of(upTo.getYear(), 1), true, last, true);
+		if(year.isEmpty())
+		{
+			return result; // nothing to read, and in a new store the columns do not exist yet
+		}
+
+		FileChannel airlineColumn = FileChannel.open(column(AIRLINE).toPath());
+		FileChannel chargeColumn = FileChannel.open(column(CHARGE).toPath());
+		FileChannel dateColumn = wholeMonth ? null : FileChannel.open(column(DATE).toPath());
+		try
+		{
+			for(Map.Entry<YearMonth, long[]> month : year.entrySet())
+			{
+				IntBuffer airline = map(airlineColumn, month.getValue());
+				IntBuffer charge = map(chargeColumn, month.getValue());
+				if(dateColumn != null && month.getKey().equals(last))
+				{
+					IntBuffer date = map(dateColumn, month.getValue());
+					for(int i = 0; i < airline.limit(); i++)
+					{
+						if(date.get(i) <= lastDay)
+						{
+							totals[airline.get(i)] += charge.get(i);
+						}
+					}
+				}
+				else
+				{
+					for(int i = 0; i < airline.limit(); i++)
+					{
+						totals[airline.get(i)] += charge.get(i);
+					}
+				}
+			}
+		}
+		finally
+		{
+			airlineColumn.close();
+			chargeColumn.close();
+			if(dateColumn != null)
+			{
+				dateColumn.close();
+			}
+		}
+
+		for(int a = 0; a < totals.length; a++)
+		{
+			if(totals[a] != 0)
+			{
+				result.put(airlines.get(a), totals[a]);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Totals one airline's charges and billed minutes for each month
+	 * in the store, reading the airline, minutes and charge columns.
+	 * @param code
+	 * @return month -> {charge, billed minutes, charged rows}, in month 
+	 * order, which is empty if the store has no rows for the airline
+	 * @throws IOException
+	 */
+	public Map<YearMonth, long[]> trend(String code) throws IOException
+	{
+		Map<YearMonth, long[]> trend = new LinkedHashMap<YearMonth, long[]>();
+		int id = airlines.indexOf(code);
+		if(id < 0 || months.isEmpty())
+		{
+			return trend; // in a new store the columns do not exist yet
+		}
+
+		FileChannel airlineColumn = FileChannel.open(column(AIRLINE).toPath());
+		FileChannel minutesColumn = FileChannel.open(column(MINUTES).toPath());
+		FileChannel chargeColumn = FileChannel.open(column(CHARGE).toPath());
+		try
+		{
+			for(Map.Entry<YearMonth, long[]> month : months.entrySet())
+			{
+				IntBuffer airline = map(airlineColumn, month.getValue());
+				IntBuffer minutes = map(minutesColumn, month.getValue());
+				IntBuffer charge = map(chargeColumn, month.getValue());
+				long[] figures = new long[3];
+				for(int i = 0; i < airline.limit(); i++)
+				{
+					if(airline.get(i) == id)
+					{
+						figures[0] += charge.get(i);
+						figures[1] += minutes.get(i);
+						figures[2]++;
+					}
+				}
+				trend.put(month.getKey(), figures);
+			}
+		}
+		finally
+		{
+			airlineColumn.close();
+			minutesColumn.close();
+			chargeColumn.close();
+		}
+		return trend;
+	}
+
+
+	/**
+	 * @return the total charge of each month in the store, from the index alone
+	 */
+	public Map<YearMonth, Long> monthTotals()
+	{
+		Map<YearMonth, Long> totals = new LinkedHashMap<YearMonth, Long>();
+		for(Map.Entry<YearMonth, long[]> month : months.entrySet())
+		{
+			totals.put(month.getKey(), month.getValue()[2]);
+		}
+		return totals;
+	}
+
+
+	/**
+	 * Runs a history command from the command line.
+	 * @param args  add [report file]
+	 *          or  ytd [yyyy-mm-dd]
+	 *          or  trend <airline>
+	 *          or  months
+	 */
+	public static void run(String[] args) throws IOException
+	{
+		ChargeHistory history = new ChargeHistory(System.getProperty("cbs.history", DEFAULT_DIRECTORY));
+		long start = System.nanoTime();
+		String command = (args.length > 0) ? args[0] : "";
+
+		if(command.equals("add"))
+		{
+			String report = (args.length > 1) ? args[1] : Controller.REPORT_FILENAME;
+			YearMonth month = history.append(ResultStore.load(report));
+			System.out.println((month == null) ? "No charged rows in " + report : "Added " + month + " from " + report);
+			if(history.getSkippedRows() > 0)
+			{
+				System.out.println(history.getSkippedRows() + " rows from other months were left out");
+			}
+		}
+		else if(command.equals("ytd"))
+		{
+			LocalDate upTo = (args.length > 1) ? LocalDate.parse(args[1]) : LocalDate.now();
+			long total = 0;
+			for(Map.Entry<String, Long> airline : history.yearToDate(upTo).entrySet())
+			{
+				System.out.println(String.format("%-10s,%d", airline.getKey(), airline.getValue()));
+				total += airline.getValue();
+			}
+			System.out.println(String.format("%-10s,%d", "TOTAL", total));
+		}
+		else if(command.equals("trend") && args.length > 1)
+		{
+			System.out.println("MONTH  ,CHARGE    ,MINUTES   ,ROWS");
+			for(Map.Entry<YearMonth, long[]> month : history.trend(args[1]).entrySet())
+			{
+				long[] figures = month.getValue();
+				System.out.println(String.format("%-7s,%-10d,%-10d,%d", month.getKey(), figures[0], figures[1], figures[2]));
+			}
+		}
+		else if(command.equals("months"))
+		{
+			for(Map.Entry<YearMonth, Long> month : history.monthTotals().entrySet())
+			{
+				System.out.println(month.getKey() + "," + month.getValue());
+			}
+		}
+		else
+		{
+			System.out.println("Usage: history add [report file] | ytd [yyyy-mm-dd] | trend <airline> | months");
+			return;
+		}
+		System.out.println(String.format("(%.1f ms)", (System.nanoTime() - start) / 1e6));
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * This class records why each charged row was charged, so that a
+ * disputed charge can be explained without billing the month again.
+ *
+ * While a row is billed, DaySchedule notes every stretch of the
+ * session that it counted as billed minutes: the flight whose valid
+ * period the stretch falls before or after, and the stretch's start
+ * and end once adjustEffectiveLoginTime and adjustEffectiveLogoutTime
+ * have clipped it to the neighbouring flights. A session that misses
+ * every valid period is noted once, with no flight, for its whole
+ * length. The notes are kept in flat arrays and only turned into
+ * text when the trace is written out as Attribution.csv:
+ *
+ *   DATE,COUNTER,AIRLINE,LOGIN,FLIGHT,DEPARTURE,FROM,TO,MINUTES
+ *   2019-03-01,Counter 4,AA,05:10,AA 1234,08:00,05:10,05:25,15
+ *
+ * Billing is done with a null trace unless attribution is asked for,
+ * which costs one null check per stretch.
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+public class ChargeTrace {
+	public static final String ATTRIBUTION_FILENAME = "Attribution.csv";
+	private static final int FIELDS = 4; // row, from, to, minutes
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int[] entries = new int[INITIAL_CAPACITY * FIELDS];
+	private Flight[] flights = new Flight[INITIAL_CAPACITY];
+	private int size; // entries of committed rows
+	private int pending; // entries of the row being billed
+
+
+	/**
+	 * @return true if the cbs.attribution system property asks for a trace
+	 */
+	public static boolean isRequested()
+	{
+		return Boolean.getBoolean("cbs.attribution");
+	}
+
+
+	/**
+	 * Notes a stretch of the row being billed that was counted as
+	 * billed minutes.
+	 * @param flight the flight whose valid period it falls outside, or null
+	 * @param from the start of the stretch
+	 * @param to the end of the stretch
+	 * @param minutes the billed minutes it added
+	 */
+	void window(Flight flight, LocalTime from, LocalTime to, int minutes)
+	{
+		int index = size + pending;
+		if(index == flights.length)
+		{
+			flights = Arrays.copyOf(flights, index * 2);
+			entries = Arrays.copyOf(entries, index * 2 * FIELDS);
+		}
+		flights[index] = flight;
+		entries[index * FIELDS + 1] = from.toSecondOfDay() / 60;
+		entries[index * FIELDS + 2] = to.toSecondOfDay() / 60;
+		entries[index * FIELDS + 3] = minutes;
+		pending++;
+	}
+
+
+	/**
+	 * Keeps the stretches noted since the last row, as the row was charged.
+	 * @param row the row's number in the log
+	 */
+	public void commit(int row)
+	{
+		for(int i = size; i < size + pending; i++)
+		{
+			entries[i * FIELDS] = row;
+		}
+		size += pending;
+		pending = 0;
+	}
+
+
+	/**
+	 * Drops the stretches noted since the last row, as the row was not charged.
+	 */
+	public void discard()
+	{
+		Arrays.fill(flights, size, size + pending, null);
+		pending = 0;
+	}
+
+
+	/**
+	 * @return the number of stretches recorded for charged rows
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+
+	/**
+	 * Writes the recorded stretches, in the order their rows were charged.
+	 * @param filepath
+	 * @param log the log the rows were billed from
+	 * @throws IOException
+	 */
+	public void write(String filepath, LoginLog log) throws IOException
+	{
+		FileWriter writer = new FileWriter(filepath);
+		try
+		{
+			writer.write("DATE,COUNTER,AIRLINE,LOGIN,FLIGHT,DEPARTURE,FROM,TO,MINUTES\r\n");
+			StringBuilder line = new StringBuilder();
+			for(int i = 0; i < size; i++)
+			{
+				int row = entries[i * FIELDS];
+				LocalDateTime login = log.getLogin(row);
+				line.setLength(0);
+				line.append(login.toLocalDate()).append(',').append(log.getCounter(row)).append(',')
+					.append(log.getCode(row)).append(',').append(login.toLocalTime()).append(',');
+				if(flights[i] != null)
+				{
+					line.append(flights[i].getFlightNum().trim()).append(',').append(flights[i].getDepTime());
+				}
+				else
+				{
+					line.append("NONE,");
+				}
+				line.append(',').append(LocalTime.ofSecondOfDay(entries[i * FIELDS + 1] * 60L))
+					.append(',').append(LocalTime.ofSecondOfDay(entries[i * FIELDS + 2] * 60L))
+					.append(',').append(entries[i * FIELDS + 3]).append("\r\n");
+				writer.write(line.toString());
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
@@ -5,38 +5,112 @@
  * flight schedule.
  */
 
+import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.TreeSet;
 
 public class Controller {
-	private Set<String> airlineSet; // a set for all airline codes that appear in the month's report
+	private Set<String> airlineSet; // all airline codes that appear in the month's report, in report order
 	private String dataFilepath; // filepath of the SITA report
 	private String scheduleFilepath; // filepath of the flight schedule
-	private String report; // the resulting billing report
-	private String outputFilename = "Report.csv";
+	public static final String REPORT_FILENAME = "Report.csv";
+	private String outputFilename = REPORT_FILENAME;
+	private Writer reportOut; // where the report is written instead of a file, or null
+	private boolean invoicePerAirline; // write one invoice file per airline instead of a single report
+	private ResultStore.Builder resultBuilder; // collects the charged rows while billing, or null if they are not kept
+	private ResultStore results; // indexed charged rows of the completed run, or null if they are not kept
+	private boolean gatherUtilization; // whether to gather counter occupancy while billing
+	private UtilizationAnalyzer utilization; // counter occupancy, or null if it was not asked for
 	private List<Flight> flights;
 	private DaySchedule[] schedules; // array of daily schedules based on the schedule file
-	private final int ARRDEPCOL = 43;
+	private BillingRules rules = BillingRules.DEFAULT;
+	private static final int ARRDEPCOL = 43;
+	public static final String REJECT_FILENAME = "Rejects.csv";
+	private LoginLog log; // the valid line items of the SITA report
+	private Map<String, int[]> airlineRows; // row numbers in the log for each airline code
+	private Map<LoginRowReader.Reason, Integer> rejectCounts; // invalid lines by reason
+	private ChargeTrace trace; // why each row was charged, or null unless cbs.attribution is set and files are written
+	private String inputKey; // ResultCache.key of the data, schedule and rules, if the caller has it
 
 	
 	
 	public Controller(String data, String schedule)
 	{
-		airlineSet = new HashSet<String>();
+		this(data, schedule, false);
+	}
+	
+	
+	public Controller(String data, String schedule, boolean invoicePerAirline)
+	{
+		this(data, schedule, invoicePerAirline, BillingRules.DEFAULT);
+	}
+	
+	
+	/**
+	 * Bills the files under the given rules, e.g. ones that bill gates.
+	 * @param data
+	 * @param schedule
+	 * @param invoicePerAirline
+	 * @param rules
+	 */
+	public Controller(String data, String schedule, boolean invoicePerAirline, BillingRules rules)
+	{
+		this(data, schedule, invoicePerAirline, rules, false, null);
+	}
+	
+	
+	/**
+	 * Bills the files under the given rules and, if asked, gathers 
+	 * counter utilization from the same rows.
+	 * @param data
+	 * @param schedule
+	 * @param invoicePerAirline
+	 * @param rules
+	 * @param gatherUtilization whether getUtilization() should be available
+	 */
+	public Controller(String data, String schedule, boolean invoicePerAirline, BillingRules rules, boolean gatherUtilization)
+	{
+		this(data, schedule, invoicePerAirline, rules, gatherUtilization, null);
+	}
+	
+	
+	/**
+	 * Bills the files with the default rules when the caller has 
+	 * already fingerprinted them, so they are not hashed again for 
+	 * the checkpoint.
+	 * @param data
+	 * @param schedule
+	 * @param inputKey ResultCache.key of the files and the default rules
+	 */
+	Controller(String data, String schedule, String inputKey)
+	{
+		this(data, schedule, false, BillingRules.DEFAULT, false, inputKey);
+	}
+	
+	
+	private Controller(String data, String schedule, boolean invoicePerAirline, BillingRules rules, 
+			boolean gatherUtilization, String inputKey)
+	{
+		this.inputKey = inputKey;
+		this.gatherUtilization = gatherUtilization;
+		this.invoicePerAirline = invoicePerAirline;
+		this.rules = rules;
+		airlineSet = new TreeSet<String>();
 		dataFilepath = data;
 		scheduleFilepath = schedule;	
-		schedules = new DaySchedule[7];
-		flights = new ArrayList<Flight>();
 		initAirlineSet();
 		initDaySchedules();	
 		processCharges();
@@ -44,36 +118,88 @@ public class Controller {
 	
 	
 	/**
-	 * Reads in the SITA report and adds the airline codes to the set
+	 * Bills line items that have already been read against a schedule 
+	 * snapshot, so that one schedule can serve many runs at once. 
+	 * Nothing is written to disk; each airline's section of the report 
+	 * is written to the given writer as soon as it is billed. The 
+	 * writer is flushed but not closed. The charged rows and the 
+	 * attribution trace are not kept, so getResults() and getTrace() 
+	 * return null.
+	 * @param log
+	 * @param snapshot
+	 * @param out
+	 */
+	Controller(LoginLog log, ScheduleSnapshot snapshot, Writer out)
+	{
+		reportOut = out;
+		airlineSet = new TreeSet<String>();
+		this.log = log;
+		flights = snapshot.getFlights();
+		schedules = snapshot.getSchedules();
+		rules = snapshot.getRules();
+		outputFilename = null;
+		airlineRows = log.rowsByCode();
+		addBilledAirlines();
+		processCharges();
+	}
+	
+	
+	/**
+	 * Reads in the SITA report, once, and adds the airline codes to the set.
+	 * Lines that fail validation are written to the reject file 
+	 * instead of stopping the run, but a file that cannot be read to 
+	 * the end, such as a truncated .gz, stops it before anything is 
+	 * billed. Lines from workstations that the 
+	 * rules do not bill, such as gates, are skipped as they are read 
+	 * unless utilization is gathered, which counts every session.
 	 */
 	private void initAirlineSet()
 	{
+		LoginRowReader reader = new LoginRowReader(dataFilepath, REJECT_FILENAME);
+		if(!gatherUtilization)
+		{
+			reader.setWorkstationClasses(rules.getBilledClasses());
+		}
 		try
 		{
-			FileReader reader = new FileReader(dataFilepath);
-			Scanner scanner = new Scanner(reader);
-			
-			while(scanner.hasNextLine())
-			{
-				String temp = scanner.nextLine();
-				String[] tempArray = temp.split(",");
-				
-				//exclude any blank lines at the end of CSV file
-				if(tempArray[0].charAt(0) == 'W' || tempArray[0].charAt(0) == 'G')
-				{
-					if(tempArray[1].length() < 4)
-					{
-						airlineSet.add(tempArray[1]);
-					}
-				}								
-			} 			
-			scanner.close();
-			reader.close();
+			log = reader.read();
 		} 
 		catch (IOException e)
 		{
-			e.printStackTrace();
+			// a report of part of the file would look complete, so none is written
+			throw new UncheckedIOException("Could not read " + dataFilepath, e);
 		} 
+		
+		rejectCounts = reader.getRejectCounts();
+		if(reader.getRejectTotal() > 0)
+		{
+			System.out.println(reader.getRejectTotal() + " rows rejected " + rejectCounts + ", see " + REJECT_FILENAME);
+		}
+		
+		airlineRows = log.rowsByCode();
+		addBilledAirlines();
+	}
+	
+	
+	/**
+	 * Adds the airlines that have at least one row from a workstation 
+	 * the rules bill, so that an airline seen only at gates gets no 
+	 * section in the report whether or not its gate rows were read.
+	 */
+	private void addBilledAirlines()
+	{
+		Set<WorkstationClass> billed = rules.getBilledClasses();
+		for(Map.Entry<String, int[]> airline : airlineRows.entrySet())
+		{
+			for(int row : airline.getValue())
+			{
+				if(billed.contains(log.getWorkstationClass(row)))
+				{
+					airlineSet.add(airline.getKey());
+					break;
+				}
+			}
+		}
 	}
 	
 	
@@ -83,40 +209,107 @@ public class Controller {
 	 */
 	private void initDaySchedules()
 	{
-		// initialise the 7 schedule objects
-		for(int i = 0; i < schedules.length; i++)
-		{
-			schedules[i] = new DaySchedule();
-		}
-		
+		flights = readFlights(scheduleFilepath);
+		schedules = buildSchedules(flights, rules);
+	}
+	
+	
+	/**
+	 * Reads the departures from the schedule file, which may be 
+	 * a CSV file or an Excel workbook.
+	 * @param scheduleFilepath
+	 * @return the departures sorted by time
+	 */
+	static List<Flight> readFlights(String scheduleFilepath)
+	{
 		try
 		{
-			FileReader reader = new FileReader(scheduleFilepath);
-			Scanner scanner = new Scanner(reader);
+			if(XlsxScheduleReader.isWorkbook(scheduleFilepath))
+			{
+				final List<Flight> flights = new ArrayList<Flight>();
+				new XlsxScheduleReader(scheduleFilepath).read(record -> addDeparture(flights, record));
+				Collections.sort(flights);
+				return flights;
+			}
 			
-			while(scanner.hasNextLine()) 
+			FileReader reader = new FileReader(scheduleFilepath);
+			try
 			{
-				String temp = scanner.nextLine();
-				String[] record = temp.split(",");
-				
-				// skip first line and only check the departure rows
-				if(record[0].charAt(0) == 'M' && record[ARRDEPCOL].equals("D"))
-				{
-					//add each flight to the ArrayList before sorting 
-					//them according to departure time
-					flights.add(new Flight(record));
-				}
+				return readFlights(reader);
+			}
+			finally
+			{
+				reader.close();
 			}
-			scanner.close();
-			reader.close();
 		}
 		catch(IOException e)
 		{
 			e.printStackTrace();
+			return new ArrayList<Flight>();
+		}
+	}
+	
+	
+	/**
+	 * Reads the departures from an open schedule file.
+	 * @param schedule
+	 * @return the departures sorted by time
+	 * @throws IOException
+	 */
+	static List<Flight> readFlights(Reader schedule) throws IOException
+	{
+		List<Flight> flights = new ArrayList<Flight>();
+		Scanner scanner = new Scanner(schedule);
+		
+		while(scanner.hasNextLine()) 
+		{
+			String temp = scanner.nextLine();
+			addDeparture(flights, temp.split(","));
+		}
+		if(scanner.ioException() != null)
+		{
+			throw scanner.ioException();
 		}
 		
 		//Sort the flight list by time
 		Collections.sort(flights);
+		return flights;
+	}
+	
+	
+	/**
+	 * Adds a schedule row to the list if it is a departure.
+	 * @param flights
+	 * @param record the row's columns
+	 */
+	private static void addDeparture(List<Flight> flights, String[] record)
+	{
+		// skip first line and only check the departure rows
+		if(record[0].length() > 0 && record[0].charAt(0) == 'M' && record[ARRDEPCOL].equals("D"))
+		{
+			//add each flight to the ArrayList before sorting 
+			//them according to departure time
+			flights.add(new Flight(record));
+		}
+	}
+	
+	
+	/**
+	 * Builds the 7 daily schedules from a sorted list of departures. 
+	 * Each schedule gets its own copy of the flights since the 
+	 * links between them differ from day to day.
+	 * @param flights
+	 * @param rules
+	 * @return the schedules for Monday to Sunday
+	 */
+	static DaySchedule[] buildSchedules(List<Flight> flights, BillingRules rules)
+	{
+		// initialise the 7 schedule objects
+		DaySchedule[] schedules = new DaySchedule[7];
+		for(int i = 0; i < schedules.length; i++)
+		{
+			schedules[i] = new DaySchedule(rules);
+		}
 		
 		for(Flight flight : flights)
 		{
@@ -126,7 +319,8 @@ public class Controller {
 			{
 				schedules[(flight.getDaysOfOperation()[i])-1].add(new Flight(flight.getRawData()));
 			}			
-		}		
+		}
+		return schedules;
 	}
 	
 	
@@ -136,109 +330,391 @@ public class Controller {
 	 * line item in the SITA report, has it processed by its corresponding 
 	 * DaySchedule and then produces a cumulative report file with all 
 	 * resulting charges.
+	 * Airlines are taken in code order and each airline's rows are 
+	 * sorted, so the report is the same whatever order the data file 
+	 * lists the rows in.
+	 * In invoice mode each airline's section is handed to an InvoiceWriter
+	 * as soon as it has been billed, so that its file is written while 
+	 * the next airline is being processed.
+	 * Otherwise each airline's sorted rows are merged straight into the 
+	 * report as it is billed, so the report is never held in memory. 
+	 * The report file is written with a checkpoint, so that a run that 
+	 * is stopped part way through is resumed from the last airline it 
+	 * finished.
+	 * When the cbs.attribution system property is set, the flights and
+	 * periods behind each charged row are also written to Attribution.csv;
+	 * airlines taken from a checkpoint are not in it.
 	 */
 	private void processCharges()
 	{
-		report = "";
-		StringBuilder builder = new StringBuilder(report);
+		InvoiceWriter invoices = null;
+		BillingCheckpoint checkpoint = null;
+		Writer out = null; // the report, or null in invoice mode
+		// a report that is only streamed to a writer is all the caller gets back
+		resultBuilder = (reportOut == null) ? new ResultStore.Builder() : null;
+		utilization = gatherUtilization ? new UtilizationAnalyzer(log.getMonth()) : null;
+		trace = (reportOut == null && ChargeTrace.isRequested()) ? new ChargeTrace() : null;
+		int resumed = 0;
 
 		//Format headings for report
-		builder.append(String.format("%-14s" + "," + "%-14s" + "," + "%-10s" + "," + "%-10s" + "," + "%-10s" + "," 
-		+ "%-10s" + "," + "%-16s" + "," +  "%-16s" + "," + "%-10s", "DATE",  "COUNTER", "AIRLINE", "LOGIN", 
-		"LOGOUT", "DURATION", "BILLED MINUTES", "BILLED HOURS", "CHARGE"));
-		builder.append("\r\n");
-		// builder.append("--------------------------------------------------------------------------------");
-		// builder.append("\r\n");
-
-		//process the data file one airline at a time
-		for(String code : airlineSet)
+		String header = formatHeader();
+		
+		try
 		{
-			int airlineTotal = 0; //tally of charges for current airline
-			try
+			if(invoicePerAirline)
 			{
-				FileReader reader = new FileReader(dataFilepath);
-				Scanner scanner = new Scanner(reader);
-				scanner.nextLine(); //skip the header row of the data file
-				
-				while(scanner.hasNextLine())
+				invoices = new InvoiceWriter(header);
+			}
+			else if(reportOut != null)
+			{
+				out = reportOut;
+				out.write(header);
+			}
+			else
+			{
+				checkpoint = openCheckpoint(header);
+				if(checkpoint != null)
+				{
+					out = checkpoint.getWriter();
+				}
+				else
 				{
-					String line = scanner.nextLine();
-					String[] tempArray = line.split(",");
-					
-					//exclude any blank lines at the end of CSV file
-					if(tempArray[0].charAt(0) == 'W' || tempArray[0].charAt(0) == 'G')
+					out = new BufferedWriter(new FileWriter(outputFilename));
+					out.write(header);
+				}
+			}
+	
+			//process the data file one airline at a time
+			for(String code : airlineSet)
+			{
+				if(checkpoint != null && checkpoint.isComplete(code))
+				{
+					// its section is already in the report
+					if(utilization != null)
 					{
-						if(tempArray[1].equals(code)) 
-						{
-							DateTimeFormatter formatter = DateTimeFormatter.ofPattern("M/d/yyyy H:mm");
-							DateTimeFormatter formatter2 = DateTimeFormatter.ofPattern("M/d/yy H:mm");
-							
-							LocalDateTime dateTime;
-							
-							try
-							{
-								dateTime = LocalDateTime.parse(tempArray[2], formatter);
-							}
-							catch(java.time.format.DateTimeParseException e)
-							{
-								dateTime = LocalDateTime.parse(tempArray[2], formatter2);
-							}
-							
-							
-							int dayOfWeek = dateTime.getDayOfWeek().getValue()-1;
-							
-
-							//go to the flight schedule for the given day of week and process the current row.
-							//This returns a String array with any applicable charges and other related info.							
-							String[] chargedItems = schedules[dayOfWeek].processRow(tempArray);
-							
-							
-							//chargedItems[6] = the amount charged.
-							if(chargedItems != null && Integer.parseInt(chargedItems[6]) > 0 
-									&& !(chargedItems[0].charAt(0) == 'G'))
-							{
-								airlineTotal += Integer.parseInt(chargedItems[6]);
-								int duration = Integer.parseInt(tempArray[3]);
-								
-								builder.append(String.format("%-14s" + "," + "%-14s" + "," + "%-10s" + "," + "%-10s" 
-								+ "," + "%-10s" + "," + "%-10s" + "," + "%-16s" + "," + "%-16s" + "," + /*"$" +*/ "%-10s",
-										dateTime.toLocalDate().toString(), chargedItems[0], chargedItems[1], chargedItems[2], 
-										chargedItems[3], duration, chargedItems[4], chargedItems[5], chargedItems[6]));
-								
-								builder.append("\r\n");
-							}							
-						}
-					}							
-				} 
+						recordUtilization(code);
+					}
+					resumed++;
+					continue;
+				}
 				
-				scanner.close();
-				reader.close();
-			} 
-			catch (IOException e)
+				if(invoices != null)
+				{
+					StringBuilder section = new StringBuilder();
+					int airlineTotal = billAirline(code, section);
+					invoices.submit(code, section.toString(), airlineTotal);
+					continue;
+				}
+				
+				int airlineTotal = billAirline(code, out);
+				out.write(formatTotal(code, airlineTotal));
+				if(checkpoint != null)
+				{
+					checkpoint.complete(code, airlineTotal);
+				}
+			}
+			
+			//airlines with no billed rows still occupy their gates
+			if(utilization != null)
 			{
-				e.printStackTrace();
-			} 
+				for(String code : airlineRows.keySet())
+				{
+					if(!airlineSet.contains(code))
+					{
+						recordUtilization(code);
+					}
+				}
+			}
 			
-			builder.append("," + "," + "," + "," + "," + "," + "," + "TOTAL CHARGE FOR " + code + ": " + "," + /*"$" +*/ airlineTotal + "\r\n\r\n\r\n");
+			if(checkpoint != null)
+			{
+				checkpoint.finish();
+				checkpoint = null;
+			}
+			else if(out != null)
+			{
+				out.flush();
+			}
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Could not write the report", e);
+		}
+		finally
+		{
+			if(checkpoint != null)
+			{
+				// the run stopped part way through; the next one resumes from the checkpoint
+				checkpoint.close();
+			}
+			else if(out != null && out != reportOut)
+			{
+				closeQuietly(out);
+			}
+			if(invoices != null)
+			{
+				invoices.close(); // the queued invoices are still written, and finish() waits for them
+			}
+		}
+		
+		results = (resultBuilder != null) ? resultBuilder.build() : null;
+		writeAttribution();
+		
+		if(invoices != null)
+		{
+			invoices.finish();
+			return;
 		}
-		report = builder.toString();
 		
+		if(resumed > 0)
+		{
+			loadResults();
+		}
+	}
+	
+	
+	private static void closeQuietly(Writer writer)
+	{
 		try
 		{
-			FileWriter writer = new FileWriter(outputFilename);
-			writer.write(report);
 			writer.close();
 		}
 		catch(IOException e)
 		{
 			e.printStackTrace();
-		}		
+		}
+	}
+	
+	
+	/**
+	 * Writes the trace of the run, if there is one.
+	 */
+	private void writeAttribution()
+	{
+		if(trace == null)
+		{
+			return;
+		}
+		try
+		{
+			trace.write(ChargeTrace.ATTRIBUTION_FILENAME, log);
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Prepares the checkpoint for this run's files, picking up
+	 * where an earlier run with the same files stopped.
+	 * @param header
+	 * @return the checkpoint, or null to write the report without one
+	 */
+	private BillingCheckpoint openCheckpoint(String header)
+	{
+		try
+		{
+			if(inputKey == null)
+			{
+				inputKey = ResultCache.key(dataFilepath, scheduleFilepath, schedules[0].getBillingParameters());
+			}
+			BillingCheckpoint checkpoint = new BillingCheckpoint(outputFilename, inputKey);
+			checkpoint.open(header);
+			return checkpoint;
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Rebuilds the charged rows from the report after a resumed run, 
+	 * since the airlines billed before it stopped are only in the file.
+	 */
+	private void loadResults()
+	{
+		try
+		{
+			results = ResultStore.load(outputFilename);
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Adds an airline's sessions to the utilization figures 
+	 * without billing them.
+	 * @param code
+	 */
+	private void recordUtilization(String code)
+	{
+		for(int row : airlineRows.get(code))
+		{
+			utilization.record(log.getCounter(row), code, log.getLogin(row), log.getDuration(row));
+		}
+	}
+	
+	
+	/**
+	 * Processes every line item in the SITA report for the given 
+	 * airline code and appends the charged rows to the section, 
+	 * sorted by date, counter and login time.
+	 * @param code
+	 * @param section the report or the airline's invoice
+	 * @return the total charge for the airline
+	 * @throws IOException if the rows cannot be sorted or written
+	 */
+	private int billAirline(String code, Appendable section) throws IOException
+	{
+		int airlineTotal = 0; //tally of charges for current airline
+		ReportSorter sorter = new ReportSorter();
+		
+		try
+		{
+			for(int row : airlineRows.get(code))
+			{
+				LocalDateTime dateTime = log.getLogin(row);
+				int dayOfWeek = dateTime.getDayOfWeek().getValue()-1;
+				int duration = log.getDuration(row);
+			
+				//every session counts towards occupancy, charged or not
+				if(utilization != null)
+				{
+					utilization.record(log.getCounter(row), code, dateTime, duration);
+				}
+			
+				//go to the flight schedule for the given day of week and process the current row.
+				//This returns a String array with any applicable charges and other related info,
+				//or null for rows that are not billed, such as gates unless the rules bill them.
+				String[] chargedItems = schedules[dayOfWeek].processStationRow(log.getWorkstationClass(row), 
+						log.getCounter(row), code, dateTime, duration, trace);
+			
+			
+				//chargedItems[6] = the amount charged.
+				boolean charged = chargedItems != null && Integer.parseInt(chargedItems[6]) > 0;
+				if(trace != null)
+				{
+					if(charged)
+					{
+						trace.commit(row);
+					}
+					else
+					{
+						trace.discard();
+					}
+				}
+			
+				if(charged)
+				{
+					airlineTotal += Integer.parseInt(chargedItems[6]);
+				
+					sorter.add(dateTime.toLocalDate(), chargedItems[0], dateTime.toLocalTime(), 
+							formatRow(dateTime, duration, chargedItems));
+				
+					if(resultBuilder != null)
+					{
+						resultBuilder.add(dateTime.toLocalDate(), chargedItems[0], chargedItems[1], 
+								LocalTime.parse(chargedItems[2]), LocalTime.parse(chargedItems[3]), duration, 
+								Integer.parseInt(chargedItems[4]), Integer.parseInt(chargedItems[5]), 
+								Integer.parseInt(chargedItems[6]));
+					}
+				}							
+			}
+		
+			sorter.mergeTo(section);
+		}
+		finally
+		{
+			sorter.discard(); // any spilled rows, if billing stopped before they were merged
+		}
+		return airlineTotal;
+	}
+	
+	
+	/**
+	 * @return the column headings of the report
+	 */
+	static String formatHeader()
+	{
+		return String.format("%-14s" + "," + "%-14s" + "," + "%-10s" + "," + "%-10s" + "," + "%-10s" + "," 
+		+ "%-10s" + "," + "%-16s" + "," +  "%-16s" + "," + "%-10s", "DATE",  "COUNTER", "AIRLINE", "LOGIN", 
+		"LOGOUT", "DURATION", "BILLED MINUTES", "BILLED HOURS", "CHARGE") + "\r\n";
+	}
+	
+	
+	/**
+	 * @param dateTime the login
+	 * @param duration
+	 * @param chargedItems the result of processCounterRow
+	 * @return the report line for a charged row
+	 */
+	static String formatRow(LocalDateTime dateTime, int duration, String[] chargedItems)
+	{
+		return String.format("%-14s" + "," + "%-14s" + "," + "%-10s" + "," + "%-10s" 
+		+ "," + "%-10s" + "," + "%-10s" + "," + "%-16s" + "," + "%-16s" + "," + /*"$" +*/ "%-10s",
+				dateTime.toLocalDate().toString(), chargedItems[0], chargedItems[1], chargedItems[2], 
+				chargedItems[3], duration, chargedItems[4], chargedItems[5], chargedItems[6]) + "\r\n";
+	}
+	
+	
+	/**
+	 * @param code
+	 * @param airlineTotal
+	 * @return the line that closes an airline's section of the report
+	 */
+	static String formatTotal(String code, int airlineTotal)
+	{
+		return "," + "," + "," + "," + "," + "," + "," + "TOTAL CHARGE FOR " + code + ": " + "," + /*"$" +*/ airlineTotal + "\r\n\r\n\r\n";
 	}
 
 
 	public DaySchedule[] getSchedules() {
 		return schedules;
 	}
+
+
+	public List<Flight> getFlights() {
+		return flights;
+	}
+
+
+	public ResultStore getResults() {
+		return results;
+	}
+
+
+	/**
+	 * @return the attribution trace of the run, or null if none was asked for
+	 */
+	public ChargeTrace getTrace() {
+		return trace;
+	}
+
+
+	public Map<LoginRowReader.Reason, Integer> getRejectCounts() {
+		return rejectCounts;
+	}
+
+
+	/**
+	 * @return the counter utilization of the run, or null unless it was asked for
+	 */
+	public UtilizationAnalyzer getUtilization() {
+		return utilization;
+	}
+
+
+	public String getOutputFilename() {
+		return outputFilename;
+	}
 	
 	
 
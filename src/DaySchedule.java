@@ -21,18 +21,44 @@ public class DaySchedule {
 
 	//amount of extra time in minutes that the airlines are allowed to be logged 
 	//before and after the allotted time for a flight
-	private final int GRACEPERIOD = 15; 
-	private final int HOURLYCHARGE = 10; 
+	private final int GRACEPERIOD; 
+	private final int HOURLYCHARGE; 
+	
+	//the time span in minutes during which an airline can be 
+	//logged in to check passengers in without being charged a fee
+	private final int TIMEALLOWED;
+	private final BillingRules rules;
 	private Flight[] buckets;	//hash table
+	private boolean frozen; // no more flights can be added once the schedule is shared
 	
 
 	public DaySchedule()
 	{
+		this(BillingRules.DEFAULT);
+	}
+	
+	
+	public DaySchedule(BillingRules rules)
+	{
+		this.rules = rules;
+		GRACEPERIOD = rules.getGracePeriod();
+		HOURLYCHARGE = rules.getHourlyCharge();
+		TIMEALLOWED = rules.getTimeAllowed();
 		buckets = new Flight[NUMBUCKETS];
 	}
 	
 	
 	
+	/**
+	 * @return a description of the values that the charges 
+	 * depend on, used to tell whether two runs are comparable
+	 */
+	public String getBillingParameters()
+	{
+		return rules.toString();
+	}
+	
+	
 	/**
 	 * Adds new flights to their relevant bucket based on their airline code.
 	 * New flights are added to the tail of the linked list in order to 
@@ -40,6 +66,11 @@ public class DaySchedule {
 	 */
 	public void add(Flight newFlight)
 	{		
+		if(frozen)
+		{
+			throw new IllegalStateException("Flights cannot be added to a frozen schedule");
+		}
+		
 		int bucketIndex = hash(newFlight.getAirlineCode());
 		
 		Flight curr = buckets[bucketIndex];
@@ -70,6 +101,24 @@ public class DaySchedule {
 	}
 	
 
+	/**
+	 * Stops any further changes to the schedule or its flights, 
+	 * so that it can be shared by billing runs on several threads.
+	 */
+	void freeze()
+	{
+		frozen = true;
+		for(Flight curr : buckets)
+		{
+			while(curr != null)
+			{
+				curr.freeze();
+				curr = curr.getNext();
+			}
+		}
+	}
+	
+	
 	/**
 	 * This accounts for the possibility of collisions 
 	 * in the hash table by allowing each flight to 
@@ -133,9 +182,6 @@ public class DaySchedule {
 	 */
 	public String[] processRow(String[] line) 
 	{
-		String workstation = line[0];
-		String code = line[1];
-		String counter = convertCounterName(workstation);
 		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("M/d/yyyy H:mm");
 		DateTimeFormatter formatter2 = DateTimeFormatter.ofPattern("M/d/yy H:mm");
 		LocalDateTime dateTime;	
@@ -149,26 +195,93 @@ public class DaySchedule {
 			dateTime = LocalDateTime.parse(line[2], formatter2);
 		}
 		
+		return processRow(line[0], line[1], dateTime, Integer.parseInt(line[3]));
+	}
+	
+	
+	/**
+	 * Processes a line item whose fields have already been parsed.
+	 * @param workstation
+	 * @param code
+	 * @param dateTime the login date and time
+	 * @param duration logged in minutes
+	 * @return String array with line item data for report
+	 */
+	public String[] processRow(String workstation, String code, LocalDateTime dateTime, int duration) 
+	{
+		return processCounterRow(convertCounterName(workstation), code, dateTime, duration);
+	}
+	
+	
+	/**
+	 * Processes a line item whose workstation has already been 
+	 * resolved to its counter or gate name.
+	 * @param counter
+	 * @param code
+	 * @param dateTime the login date and time
+	 * @param duration logged in minutes
+	 * @return String array with line item data for report
+	 */
+	public String[] processCounterRow(String counter, String code, LocalDateTime dateTime, int duration) 
+	{
+		return billRow(counter, code, dateTime, duration, TIMEALLOWED, null);
+	}
+	
+	
+	/**
+	 * Processes a line item according to the class of its workstation.
+	 * Gates are billed against the shorter gate time allowed when the 
+	 * rules bill gates, and are not billed at all otherwise, so no 
+	 * work is spent on rows whose charge would be thrown away.
+	 * @param workstationClass
+	 * @param counter
+	 * @param code
+	 * @param dateTime the login date and time
+	 * @param duration logged in minutes
+	 * @return String array with line item data for report, or null if the row is not billed
+	 */
+	public String[] processStationRow(WorkstationClass workstationClass, String counter, String code, LocalDateTime dateTime, int duration) 
+	{
+		return processStationRow(workstationClass, counter, code, dateTime, duration, null);
+	}
+	
+	
+	/**
+	 * Processes a line item according to the class of its workstation,
+	 * noting the stretches of it that are billed in the trace.
+	 * @param trace where to note them, or null
+	 * @return String array with line item data for report, or null if the row is not billed
+	 */
+	public String[] processStationRow(WorkstationClass workstationClass, String counter, String code, LocalDateTime dateTime, int duration, 
+			ChargeTrace trace) 
+	{
+		if(workstationClass != WorkstationClass.GATE)
+		{
+			return billRow(counter, code, dateTime, duration, TIMEALLOWED, trace);
+		}
+		if(!rules.isBillingGates())
+		{
+			return null;
+		}
+		return billRow(counter, code, dateTime, duration, rules.getGateTimeAllowed(), trace);
+	}
+	
+	
+	/**
+	 * Compares a line item's logged in period with the airline's 
+	 * flights for the day and works out the charge.
+	 * @param timeAllowed the minutes before a departure that can be 
+	 * logged in free of charge
+	 * @param trace where to note the billed stretches, or null
+	 */
+	private String[] billRow(String counter, String code, LocalDateTime dateTime, int duration, int timeAllowed, ChargeTrace trace) 
+	{
 		LocalDate date = dateTime.toLocalDate();			
 		LocalTime loginTime = dateTime.toLocalTime();
-		LocalTime logoutTime = loginTime.plusMinutes(Integer.parseInt(line[3]));
+		LocalTime logoutTime = loginTime.plusMinutes(duration);
 		
 		String[] result = new String[7];
 		
-		//the time span in minutes during which an airline can be 
-		//logged in to check passengers in without being charged a fee
-		int timeAllowed = 180;  
-		
-		//reduce the time allowed to 45 minutes for the gates
-		/*
-		switch(workstation)
-		{
-		case "GND1GTG001": case "GND1GTG002": case "GND1GTG003": case "GND1GTG004": 
-			timeAllowed = 45;
-		default: break;
-		}
-		*/
-		
 		// tally of the number of chargeable minutes
 		int rowTotal = 0;
 
@@ -200,14 +313,22 @@ public class DaySchedule {
 	
 								//add the number of minutes in violation before the start 
 								//of the valid period for the current flight
-								rowTotal += (int)effectiveLoginTime.until(curr.getDepTime().minusMinutes(timeAllowed+GRACEPERIOD), ChronoUnit.MINUTES);
+								int early = (int)effectiveLoginTime.until(curr.getDepTime().minusMinutes(timeAllowed+GRACEPERIOD), ChronoUnit.MINUTES);
+								rowTotal += early;
 								
 								/*
 								if the next flight is so soon that the beginning of its valid
 								period is before the effective login time, add 0 to the rowTotal
 								as opposed to the resulting negative number
 								*/
-								rowTotal += Math.max((int)curr.getDepTime().plusMinutes(GRACEPERIOD).until(effectiveLogoutTime, ChronoUnit.MINUTES), 0);								
+								int late = Math.max((int)curr.getDepTime().plusMinutes(GRACEPERIOD).until(effectiveLogoutTime, ChronoUnit.MINUTES), 0);
+								rowTotal += late;
+								
+								if(trace != null)
+								{
+									traceEarly(trace, curr, effectiveLoginTime, early, timeAllowed);
+									traceLate(trace, curr, effectiveLogoutTime, late);
+								}
 							}
 
 							else if(loggedInEarly(loginTime, curr.getDepTime(), timeAllowed) && !(loggedOutLate(logoutTime, curr.getDepTime(), timeAllowed)))
@@ -218,7 +339,13 @@ public class DaySchedule {
 								
 								//add the number of minutes in violation before the start 
 								//of the valid period for the current flight
-								rowTotal += (int)effectiveLoginTime.until(curr.getDepTime().minusMinutes(timeAllowed+GRACEPERIOD), ChronoUnit.MINUTES);								
+								int early = (int)effectiveLoginTime.until(curr.getDepTime().minusMinutes(timeAllowed+GRACEPERIOD), ChronoUnit.MINUTES);
+								rowTotal += early;
+								
+								if(trace != null)
+								{
+									traceEarly(trace, curr, effectiveLoginTime, early, timeAllowed);
+								}
 							}
 
 							else if(loggedOutLate(logoutTime, curr.getDepTime(), timeAllowed) && !(loggedInEarly(loginTime, curr.getDepTime(), timeAllowed)))
@@ -232,7 +359,13 @@ public class DaySchedule {
 								period is before the effective login time, add 0 to the rowTotal
 								as opposed to the resulting negative number
 								*/
-								rowTotal += Math.max((int)curr.getDepTime().plusMinutes(GRACEPERIOD).until(effectiveLogoutTime, ChronoUnit.MINUTES), 0);								
+								int late = Math.max((int)curr.getDepTime().plusMinutes(GRACEPERIOD).until(effectiveLogoutTime, ChronoUnit.MINUTES), 0);
+								rowTotal += late;
+								
+								if(trace != null)
+								{
+									traceLate(trace, curr, effectiveLogoutTime, late);
+								}
 							}
 						}
 					}
@@ -262,6 +395,10 @@ public class DaySchedule {
 			{
 				//include entire duration without condition
 				rowTotal = (int)(loginTime.until(logoutTime, ChronoUnit.MINUTES));
+				if(trace != null)
+				{
+					trace.window(null, loginTime, logoutTime, rowTotal);
+				}
 				int chargeableHours = (rowTotal/60) +1;
 				
 				charge = chargeableHours*HOURLYCHARGE;
@@ -284,62 +421,44 @@ public class DaySchedule {
 	}
 	
 	
+	/**
+	 * Notes the stretch billed before a flight's valid period.
+	 * @param effectiveLoginTime the start of the stretch
+	 * @param minutes the billed minutes it added
+	 */
+	private void traceEarly(ChargeTrace trace, Flight curr, LocalTime effectiveLoginTime, int minutes, int timeAllowed)
+	{
+		if(minutes != 0)
+		{
+			trace.window(curr, effectiveLoginTime, curr.getDepTime().minusMinutes(timeAllowed+GRACEPERIOD), minutes);
+		}
+	}
+	
+	
+	/**
+	 * Notes the stretch billed after a flight's valid period.
+	 * @param effectiveLogoutTime the end of the stretch
+	 * @param minutes the billed minutes it added
+	 */
+	private void traceLate(ChargeTrace trace, Flight curr, LocalTime effectiveLogoutTime, int minutes)
+	{
+		if(minutes != 0)
+		{
+			trace.window(curr, curr.getDepTime().plusMinutes(GRACEPERIOD), effectiveLogoutTime, minutes);
+		}
+	}
+	
+	
 	/**
 	 * takes the workstation name as input and 
 	 * returns the corresponding counter name.
+	 * The names come from the configured WorkstationMap.
 	 * @param workstation
 	 * @return counter name
 	 */
-	private String convertCounterName(String workstation) 
+	static String convertCounterName(String workstation) 
 	{
-		switch(workstation)
-		{
-		case "GND1CKB001": case "GND1CKR002":
-			return "Counter 1";
-		case "GND1CKB003": case "GND1CKR004":
-			return "Counter 2";
-		case "GND1CKB005": case "GND1CKR006":
-			return "Counter 3";
-		case "GND1CKB007": case "GND1CKR008":
-			return "Counter 4";
-		case "GND1CKB009": case "GND1CKR010":
-			return "Counter 5";
-		case "GND1CKB011": case "GND1CKR012":
-			return "Counter 6";
-		case "GND1CKB013": case "GND1CKR014":
-			return "Counter 7";
-		case "GND1CKB015": case "GND1CKR016":
-			return "Counter 8";
-		case "GND1CKB017": case "GND1CKR018":
-			return "Counter 9";
-		case "GND1CKB019": case "GND1CKR020":
-			return "Counter 10";
-		case "GND1CKB021": case "GND1CKR022":
-			return "Counter 11";
-		case "GND1CKB023": case "GND1CKR024":
-			return "Counter 12";
-		case "GND1CKB025": case "GND1CKR026":
-			return "Counter 13";
-		case "GND1CKB027": case "GND1CKR028":
-			return "Counter 14";
-		case "GND1CKB029": case "GND1CKR030":
-			return "Counter 15";
-		case "GND1GTG001":
-			return "Gate 1";
-		case "GND1GTG002":
-			return "Gate 2";
-		case "GND1GTG003":
-			return "Gate 3";
-		case "GND1GTG004":
-			return "Gate 4";
-		case "GND1GTG005":
-			return "Gate 5";
-		case "GND1GTG006":
-			return "Gate 6";
-		default:
-			return "Invalid workstation";
-		}
-		
+		return WorkstationMap.getDefault().getName(workstation);
 	}
 	
 	
@@ -488,6 +607,20 @@ public class DaySchedule {
 	}
 	
 	
+	/**
+	 * Rows are matched against the flights in their airline's bucket,
+	 * so a change to one airline's flights can change how another
+	 * airline in the same bucket is billed.
+	 * @param code
+	 * @param otherCode
+	 * @return true if the two airlines share a bucket
+	 */
+	boolean sharesBucket(String code, String otherCode)
+	{
+		return hash(code) == hash(otherCode);
+	}
+	
+	
 	/**
 	 * hash function used to assign airline codes
 	 * to buckets in the DaySchedule hash table
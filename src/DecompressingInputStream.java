@@ -0,0 +1,236 @@
+/**
+ * This class lets a compressed SITA export be read as if it were
+ * the plain CSV file, without unpacking it to disk first.
+ *
+ * A background thread inflates the .gz or .zip file into chunks
+ * and hands them over through a bounded queue, so decompression
+ * runs alongside the tokenizer and billing instead of before them,
+ * and no more than a few megabytes are ever waiting to be read.
+ * A .zip is read from its first file entry.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class DecompressingInputStream extends InputStream {
+	private static final int CHUNKSIZE = 256 * 1024;
+	private static final int QUEUEDCHUNKS = 16; // at most 4 MB inflated ahead of the reader
+	private static final byte[] END = new byte[0]; // marks the end of the data
+
+	private final InputStream compressed;
+	private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(QUEUEDCHUNKS);
+	private final Thread inflater;
+	private volatile IOException failure; // set by the inflater thread
+	private volatile boolean closed;
+	private byte[] chunk = new byte[0]; // the chunk being read
+	private int position;
+
+
+	private DecompressingInputStream(InputStream compressed, String name)
+	{
+		this.compressed = compressed;
+		inflater = new Thread(new Runnable() {
+			public void run()
+			{
+				inflate();
+			}
+		}, "inflate " + name);
+		inflater.setDaemon(true);
+		inflater.start();
+	}
+
+
+	/**
+	 * Opens a data file, decompressing it in the background if its
+	 * name ends in .gz or .zip.
+	 * @param filepath
+	 * @return a stream of the file's uncompressed bytes
+	 * @throws IOException
+	 */
+	public static InputStream open(String filepath) throws IOException
+	{
+		String name = filepath.toLowerCase();
+		InputStream file = new BufferedInputStream(new FileInputStream(filepath), 64 * 1024);
+
+		if(name.endsWith(".gz"))
+		{
+			return new DecompressingInputStream(new GZIPInputStream(file, 64 * 1024), filepath);
+		}
+		if(name.endsWith(".zip"))
+		{
+			ZipInputStream zip = new ZipInputStream(file);
+			ZipEntry entry = zip.getNextEntry();
+			while(entry != null && entry.isDirectory())
+			{
+				entry = zip.getNextEntry();
+			}
+			if(entry == null)
+			{
+				zip.close();
+				throw new IOException(filepath + " does not contain a file");
+			}
+			return new DecompressingInputStream(zip, filepath);
+		}
+		return file;
+	}
+
+
+	/**
+	 * @param filepath
+	 * @return true if open() will decompress the file
+	 */
+	public static boolean isCompressed(String filepath)
+	{
+		String name = filepath.toLowerCase();
+		return name.endsWith(".gz") || name.endsWith(".zip");
+	}
+
+
+	/**
+	 * Runs on the background thread: fills chunks until the end of
+	 * the compressed data, waiting whenever the queue is full.
+	 */
+	private void inflate()
+	{
+		try
+		{
+			while(!closed)
+			{
+				byte[] buffer = new byte[CHUNKSIZE];
+				int filled = 0;
+				int read = 0;
+				while(filled < buffer.length && (read = compressed.read(buffer, filled, buffer.length - filled)) > 0)
+				{
+					filled += read;
+				}
+
+				if(filled > 0)
+				{
+					put(filled == buffer.length ? buffer : Arrays.copyOf(buffer, filled));
+				}
+				if(read < 0)
+				{
+					break;
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			failure = e;
+		}
+		catch(InterruptedException e)
+		{
+			// closed while waiting for room in the queue
+		}
+		finally
+		{
+			try
+			{
+				compressed.close();
+			}
+			catch(IOException e)
+			{
+				if(failure == null)
+				{
+					failure = e; // the reader gets it with END
+				}
+			}
+			finally
+			{
+				try
+				{
+					put(END);
+				}
+				catch(InterruptedException e)
+				{
+					// closed, so nothing more can be handed over
+				}
+			}
+		}
+	}
+
+
+	private void put(byte[] buffer) throws InterruptedException
+	{
+		while(!closed && !chunks.offer(buffer, 100, TimeUnit.MILLISECONDS))
+		{
+			// wait for the reader to make room
+		}
+	}
+
+
+	public int read() throws IOException
+	{
+		if(!fill())
+		{
+			return -1;
+		}
+		return chunk[position++] & 0xFF;
+	}
+
+
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		if(length == 0)
+		{
+			return 0;
+		}
+		if(!fill())
+		{
+			return -1;
+		}
+		int count = Math.min(length, chunk.length - position);
+		System.arraycopy(chunk, position, buffer, offset, count);
+		position += count;
+		return count;
+	}
+
+
+	/**
+	 * Makes sure there is something left to read in the current chunk.
+	 * @return false at the end of the data
+	 */
+	private boolean fill() throws IOException
+	{
+		while(position == chunk.length)
+		{
+			if(chunk == END || closed)
+			{
+				return false;
+			}
+			try
+			{
+				chunk = chunks.take();
+				position = 0;
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+			}
+			if(chunk == END && failure != null)
+			{
+				throw new IOException("Could not decompress the data file", failure);
+			}
+		}
+		return true;
+	}
+
+
+	public void close()
+	{
+		closed = true;
+		inflater.interrupt();
+		chunks.clear();
+	}
+}
@@ -19,6 +19,7 @@ public class Flight implements Comparable<Flight>{
 	private Flight previous;
 	private Flight scheduledPrevious;
 	private Flight scheduledNext;
+	private boolean frozen; // set once the flight is part of a published schedule
 
 	private final int FLIGHTNUMCOL = 42;
 	private final int DAYSOFWEEKCOL = 45;
@@ -81,6 +82,25 @@ public class Flight implements Comparable<Flight>{
 		endDate = LocalDate.parse(end, DateTimeFormatter.ofPattern("M/d/yyyy"));
 	}
 
+	/**
+	 * Stops the flight's links from being changed. Called when 
+	 * the DaySchedule it belongs to is frozen.
+	 */
+	void freeze()
+	{
+		frozen = true;
+	}
+	
+	
+	private void checkNotFrozen()
+	{
+		if(frozen)
+		{
+			throw new IllegalStateException("Flight " + flightNum + " belongs to a frozen schedule");
+		}
+	}
+	
+
 	public String toString()
 	{
 		return flightNum + " | " + airlineCode + " | " + daysOfOperationString + " | " + depTime + " | " + startDate + " | " + endDate;
@@ -96,7 +116,7 @@ public class Flight implements Comparable<Flight>{
 	
 
 	public String[] getRawData() {
-		return rawData;
+		return rawData.clone();
 	}
 
 
@@ -144,6 +164,7 @@ public class Flight implements Comparable<Flight>{
 
 
 	public void setNext(Flight nextFlight) {
+		checkNotFrozen();
 		next = nextFlight;
 	}
 
@@ -156,6 +177,7 @@ public class Flight implements Comparable<Flight>{
 
 
 	public void setPrevious(Flight previousFlight) {
+		checkNotFrozen();
 		previous = previousFlight;
 	}
 
@@ -168,6 +190,7 @@ public class Flight implements Comparable<Flight>{
 
 
 	public void setScheduledPrevious(Flight scheduledPreviousFlight) {
+		checkNotFrozen();
 		scheduledPrevious = scheduledPreviousFlight;
 	}
 
@@ -180,6 +203,7 @@ public class Flight implements Comparable<Flight>{
 
 
 	public void setScheduledNext(Flight scheduledNextFlight) {
+		checkNotFrozen();
 		scheduledNext = scheduledNextFlight;
 	}	
 
@@ -0,0 +1,126 @@
+/**
+ * This class writes one invoice file per airline code along
+ * with a summary file of each airline's total charge.
+ * Each invoice is written by its own task as soon as the
+ * airline has been billed, so that the file output overlaps
+ * the billing of the remaining airlines.
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class InvoiceWriter {
+	private String header; // column headings repeated at the top of each invoice
+	private String summaryFilename = "Summary.csv";
+	private ExecutorService pool;
+	private List<Future<?>> pending; // one write task per airline
+	private TreeMap<String, Integer> totals; // airline code -> total charge, sorted for the summary
+
+
+	public InvoiceWriter(String header)
+	{
+		this.header = header;
+		pool = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+		pending = new ArrayList<Future<?>>();
+		totals = new TreeMap<String, Integer>();
+	}
+
+
+	/**
+	 * Queues the invoice for the given airline to be
+	 * written in the background.
+	 * @param code
+	 * @param section the airline's charged rows
+	 * @param airlineTotal
+	 */
+	public void submit(final String code, final String section, final int airlineTotal)
+	{
+		totals.put(code, airlineTotal);
+		pending.add(pool.submit(new Runnable() {
+			public void run()
+			{
+				write(invoiceFilename(code), header + section + Controller.formatTotal(code, airlineTotal));
+			}
+		}));
+	}
+
+
+	/**
+	 * Waits for every queued invoice to be written and
+	 * then writes the summary file.
+	 */
+	public void finish()
+	{
+		for(Future<?> task : pending)
+		{
+			try
+			{
+				task.get();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				e.printStackTrace();
+			}
+			catch(ExecutionException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		close();
+
+		StringBuilder summary = new StringBuilder();
+		int grandTotal = 0;
+		for(String code : totals.keySet())
+		{
+			summary.append(Controller.formatTotal(code, totals.get(code)).trim());
+			summary.append("\r\n");
+			grandTotal += totals.get(code);
+		}
+		summary.append("," + "," + "," + "," + "," + "," + "," + "TOTAL CHARGE FOR ALL AIRLINES: " + "," + grandTotal + "\r\n");
+		write(summaryFilename, summary.toString());
+	}
+
+
+	/**
+	 * Lets the pool's threads end once the queued invoices are written. 
+	 * The billing run calls this even when it fails, so that its threads 
+	 * do not keep the program running; finish() calls it too.
+	 */
+	public void close()
+	{
+		pool.shutdown();
+	}
+
+
+	/**
+	 * @param code
+	 * @return the name of the invoice file for the airline
+	 */
+	public static String invoiceFilename(String code)
+	{
+		return "Invoice_" + code + ".csv";
+	}
+
+
+	private void write(String filename, String contents)
+	{
+		try
+		{
+			FileWriter writer = new FileWriter(filename);
+			writer.write(contents);
+			writer.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,422 @@
+/**
+ * This class bills counter sessions as they happen, from login and
+ * logout events, instead of waiting for the month's SITA export.
+ *
+ * Events are lines of text:
+ *
+ *   LOGIN,GND1CKB001,AA,3/14/2019 6:05
+ *   LOGOUT,GND1CKB001,3/14/2019 9:40
+ *
+ * They are read from a local socket, one connection per feed, or
+ * from .events files dropped into a spool directory. A file is claimed
+ * by renaming it to .events.reading before it is read, so that it is
+ * billed only once even if two trackers watch the same directory or
+ * the rename afterwards fails, and is renamed to .events.done once
+ * read. A feed must write each file
+ * under another name, e.g. .events.tmp, and rename it to .events
+ * only once it is complete, so that a file is never read while it is
+ * still being written. A socket client can also send TOTALS to get
+ * the running charge of each airline back.
+ *
+ * The open session of each workstation is kept in arrays indexed by
+ * the workstation's id in the WorkstationMap. When the session closes
+ * it is billed with processStationRow against the schedule that is
+ * current at that moment, exactly as the same row of an export would
+ * be, and any charge is added to its airline's running total and
+ * appended to LiveCharges.csv. A login on a workstation that is still
+ * open closes the earlier session first. Events that are earlier than
+ * the login of the workstation's open session are rejected rather than
+ * billed as sessions of no length. As in LoginRowReader, a workstation
+ * is valid if it is in the map, whatever airport it is at; events from
+ * any other workstation, or with none, are rejected.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LiveSessionTracker {
+	public static final String CHARGES_FILENAME = "LiveCharges.csv";
+	public static final String SPOOL_EXTENSION = ".events"; // complete spool files, ready to be read
+	public static final String CLAIMED_EXTENSION = ".reading"; // added to a spool file while it is read
+	public static final String DONE_EXTENSION = ".done"; // added to a spool file once it has been read
+	private static final long SPOOL_POLL_MILLIS = 1000;
+	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("M/d/yyyy H:mm");
+	private static final DateTimeFormatter FORMATTER2 = DateTimeFormatter.ofPattern("M/d/yy H:mm");
+
+	private final ScheduleRegistry schedules;
+	private final WorkstationMap workstations;
+
+	// the open session of each workstation, indexed by workstation id
+	private final String[] openCode;
+	private final LocalDateTime[] openLogin;
+
+	private final Map<String, LongAdder> totals = new ConcurrentHashMap<String, LongAdder>(); // airline -> charge so far
+	private final LongAdder sessions = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private PrintWriter charges;
+
+
+	public LiveSessionTracker(ScheduleRegistry schedules, WorkstationMap workstations)
+	{
+		this.schedules = schedules;
+		this.workstations = workstations;
+		openCode = new String[workstations.size()];
+		openLogin = new LocalDateTime[workstations.size()];
+	}
+
+
+	/**
+	 * Appends each charged session to the given file, writing the
+	 * report headings first if the file is new.
+	 * @param chargesFilepath
+	 * @throws IOException
+	 */
+	public void writeChargesTo(String chargesFilepath) throws IOException
+	{
+		boolean exists = new File(chargesFilepath).isFile();
+		charges = new PrintWriter(new FileWriter(chargesFilepath, true));
+		if(!exists)
+		{
+			charges.print(Controller.formatHeader());
+			charges.flush();
+		}
+	}
+
+
+	/**
+	 * Handles one event line.
+	 * @param line
+	 * @return false if the event was rejected
+	 */
+	public boolean accept(String line)
+	{
+		String[] fields = line.trim().split(",");
+		boolean valid = false;
+		try
+		{
+			if(fields.length == 4 && fields[0].equalsIgnoreCase("LOGIN"))
+			{
+				valid = login(fields[1].trim(), fields[2].trim(), parseTime(fields[3]));
+			}
+			else if(fields.length == 3 && fields[0].equalsIgnoreCase("LOGOUT"))
+			{
+				valid = logout(fields[1].trim(), parseTime(fields[2]));
+			}
+		}
+		catch(DateTimeParseException e)
+		{
+			valid = false;
+		}
+
+		if(!valid)
+		{
+			rejected.increment();
+		}
+		return valid;
+	}
+
+
+	private static LocalDateTime parseTime(String text)
+	{
+		text = text.trim();
+		try
+		{
+			return LocalDateTime.parse(text, FORMATTER);
+		}
+		catch(DateTimeParseException e)
+		{
+			return LocalDateTime.parse(text, FORMATTER2);
+		}
+	}
+
+
+	/**
+	 * Opens a session, closing any session still open on the workstation.
+	 * @return false if the event is rejected, e.g. because it is earlier 
+	 * than the login of the open session
+	 */
+	public synchronized boolean login(String workstation, String code, LocalDateTime time)
+	{
+		int id = workstations.lookup(workstation, 0, workstation.length());
+		if(workstation.isEmpty() || id < 0 || code.isEmpty() || code.length() > 3)
+		{
+			return false;
+		}
+		if(openLogin[id] != null)
+		{
+			if(time.isBefore(openLogin[id]))
+			{
+				return false; // out of order
+			}
+			close(id, time);
+		}
+		openCode[id] = code;
+		openLogin[id] = time;
+		return true;
+	}
+
+
+	/**
+	 * Closes the workstation's session and bills it.
+	 * @return false if the event is rejected, e.g. because it is earlier 
+	 * than the login of the open session
+	 */
+	public synchronized boolean logout(String workstation, LocalDateTime time)
+	{
+		int id = workstations.lookup(workstation, 0, workstation.length());
+		if(workstation.isEmpty() || id < 0 || openLogin[id] == null || time.isBefore(openLogin[id]))
+		{
+			return false;
+		}
+		close(id, time);
+		return true;
+	}
+
+
+	private void close(int id, LocalDateTime time)
+	{
+		String code = openCode[id];
+		LocalDateTime login = openLogin[id];
+		openCode[id] = null;
+		openLogin[id] = null;
+
+		int duration = (int)ChronoUnit.MINUTES.between(login, time); // never before the login, see login() and logout()
+		DaySchedule schedule = schedules.current().getSchedules()[login.getDayOfWeek().getValue()-1];
+		String[] chargedItems = schedule.processStationRow(workstations.getWorkstationClass(id), workstations.getName(id), 
+				code, login, duration);
+		sessions.increment();
+
+		//chargedItems[6] = the amount charged
+		if(chargedItems != null && Integer.parseInt(chargedItems[6]) > 0)
+		{
+			totals.computeIfAbsent(code, c -> new LongAdder()).add(Integer.parseInt(chargedItems[6]));
+			if(charges != null)
+			{
+				charges.print(Controller.formatRow(login, duration, chargedItems));
+				charges.flush();
+			}
+		}
+	}
+
+
+	/**
+	 * @return the charge so far for each airline, by airline code
+	 */
+	public Map<String, Long> getTotals()
+	{
+		Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for(Map.Entry<String, LongAdder> entry : totals.entrySet())
+		{
+			snapshot.put(entry.getKey(), entry.getValue().sum());
+		}
+		return snapshot;
+	}
+
+
+	/**
+	 * @return the number of sessions that are currently open
+	 */
+	public synchronized int getOpenSessions()
+	{
+		int open = 0;
+		for(LocalDateTime login : openLogin)
+		{
+			if(login != null)
+			{
+				open++;
+			}
+		}
+		return open;
+	}
+
+
+	/**
+	 * @return the running totals followed by the session counts
+	 */
+	public String formatTotals()
+	{
+		StringBuilder builder = new StringBuilder();
+		for(Map.Entry<String, Long> entry : getTotals().entrySet())
+		{
+			builder.append(entry.getKey() + "," + entry.getValue() + "\n");
+		}
+		builder.append("# " + sessions.sum() + " sessions billed, " + getOpenSessions() + " open, "
+				+ rejected.sum() + " events rejected\n");
+		return builder.toString();
+	}
+
+
+	/**
+	 * Accepts event feeds on a local port, each connection on its
+	 * own thread, until the process is stopped.
+	 * @param port
+	 * @throws IOException
+	 */
+	public void listen(int port) throws IOException
+	{
+		ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		System.out.println("Tracking sessions on localhost:" + server.getLocalPort());
+		while(true)
+		{
+			final Socket socket = server.accept();
+			Thread feed = new Thread(new Runnable() {
+				public void run()
+				{
+					readFeed(socket);
+				}
+			}, "feed " + socket.getRemoteSocketAddress());
+			feed.setDaemon(true);
+			feed.start();
+		}
+	}
+
+
+	private void readFeed(Socket socket)
+	{
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				if(line.trim().equalsIgnoreCase("TOTALS"))
+				{
+					writer.print(formatTotals());
+					writer.flush();
+				}
+				else if(!line.trim().isEmpty() && !accept(line))
+				{
+					writer.println("REJECTED " + line);
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			try
+			{
+				socket.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+
+	/**
+	 * Reads complete event files (.events) from a spool directory in 
+	 * name order, renaming each to .events.done once read, until the 
+	 * process is stopped. Files with any other name are left alone, 
+	 * and so is a file that cannot be claimed.
+	 * @param directory
+	 * @throws InterruptedException
+	 */
+	public void watch(File directory) throws InterruptedException
+	{
+		System.out.println("Tracking sessions from " + directory);
+		while(true)
+		{
+			File[] files = directory.listFiles((dir, name) -> name.endsWith(SPOOL_EXTENSION) && !name.startsWith("."));
+			if(files != null && files.length > 0)
+			{
+				Arrays.sort(files);
+				for(File file : files)
+				{
+					readSpoolFile(file);
+				}
+				System.out.print(formatTotals());
+			}
+			Thread.sleep(SPOOL_POLL_MILLIS);
+		}
+	}
+
+
+	private void readSpoolFile(File file)
+	{
+		Path claimed = Paths.get(file.getPath() + CLAIMED_EXTENSION);
+		try
+		{
+			Files.move(file.toPath(), claimed, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e)
+		{
+			System.out.println("Skipping " + file + ", it could not be claimed: " + e);
+			return;
+		}
+
+		try
+		{
+			BufferedReader reader = new BufferedReader(new FileReader(claimed.toFile()));
+			try
+			{
+				String line;
+				while((line = reader.readLine()) != null)
+				{
+					if(!line.trim().isEmpty())
+					{
+						accept(line);
+					}
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+			Files.move(claimed, Paths.get(file.getPath() + DONE_EXTENSION), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * Runs the tracker from the command line.
+	 * @param scheduleFilepath
+	 * @param source a port number or a spool directory
+	 */
+	public static void run(String scheduleFilepath, String source) throws IOException, InterruptedException
+	{
+		LiveSessionTracker tracker = new LiveSessionTracker(new ScheduleRegistry(ScheduleSnapshot.read(scheduleFilepath)),
+				WorkstationMap.getDefault());
+		tracker.writeChargesTo(CHARGES_FILENAME);
+
+		if(source.matches("\\d+"))
+		{
+			tracker.listen(Integer.parseInt(source));
+		}
+		else
+		{
+			tracker.watch(new File(source));
+		}
+	}
+}
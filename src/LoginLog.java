@@ -0,0 +1,215 @@
+/**
+ * This class holds the line items of a SITA report in memory 
+ * after they have been parsed once, so that they can be billed 
+ * again without going back to the file. The fields are kept 
+ * as parallel columns; workstation names and airline codes are 
+ * shared between rows rather than copied.
+ */
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LoginLog {
+	private WorkstationMap map; // resolves the workstations to counters and gates
+	private int size;
+	private int[] station = new int[1024]; // workstation id in the map, -1 if unknown
+	private String[] workstation = new String[1024];
+	private String[] code = new String[1024];
+	private LocalDateTime[] login = new LocalDateTime[1024];
+	private int[] duration = new int[1024];
+	private Map<String, String> names = new HashMap<String, String>(); // one copy of each repeated name
+
+
+	public LoginLog()
+	{
+		this(WorkstationMap.getDefault());
+	}
+
+
+	public LoginLog(WorkstationMap map)
+	{
+		this.map = map;
+	}
+
+
+	/**
+	 * Reads every valid check-in and gate line item of a SITA report.
+	 * Invalid lines are skipped; use a LoginRowReader directly to 
+	 * find out why.
+	 * @param dataFilepath
+	 * @return the parsed line items in file order
+	 * @throws IOException
+	 */
+	public static LoginLog read(String dataFilepath) throws IOException
+	{
+		return new LoginRowReader(dataFilepath, null).read();
+	}
+
+
+	/**
+	 * Adds a parsed line item to the end of the log.
+	 */
+	public void add(String workstationName, String airlineCode, LocalDateTime loginTime, int minutes)
+	{
+		add(map.lookup(workstationName, 0, workstationName.length()), workstationName, airlineCode, loginTime, minutes);
+	}
+
+
+	/**
+	 * Adds a line item whose workstation has already been looked up in the map.
+	 * @param stationId the workstation id, or -1 if it is not in the map
+	 */
+	void add(int stationId, String workstationName, String airlineCode, LocalDateTime loginTime, int minutes)
+	{
+		if(size == code.length)
+		{
+			int capacity = size * 2;
+			station = Arrays.copyOf(station, capacity);
+			workstation = Arrays.copyOf(workstation, capacity);
+			code = Arrays.copyOf(code, capacity);
+			login = Arrays.copyOf(login, capacity);
+			duration = Arrays.copyOf(duration, capacity);
+		}
+		station[size] = stationId;
+		workstation[size] = (stationId < 0) ? share(workstationName) : map.getWorkstation(stationId);
+		code[size] = share(airlineCode);
+		login[size] = loginTime;
+		duration[size] = minutes;
+		size++;
+	}
+
+
+	public int size()
+	{
+		return size;
+	}
+
+
+	public String getWorkstation(int row)
+	{
+		return workstation[row];
+	}
+
+
+	/**
+	 * @return the counter or gate name of the row's workstation
+	 */
+	public String getCounter(int row)
+	{
+		return map.getName(station[row]);
+	}
+
+
+	public WorkstationClass getWorkstationClass(int row)
+	{
+		return map.getWorkstationClass(station[row]);
+	}
+
+
+	public WorkstationMap getWorkstationMap()
+	{
+		return map;
+	}
+
+
+	public String getCode(int row)
+	{
+		return code[row];
+	}
+
+
+	public LocalDateTime getLogin(int row)
+	{
+		return login[row];
+	}
+
+
+	public int getDuration(int row)
+	{
+		return duration[row];
+	}
+
+
+	/**
+	 * @return the month that most of the rows log in during, which
+	 * is the month the export is for, or null if the log is empty
+	 */
+	public YearMonth getMonth()
+	{
+		Map<YearMonth, Integer> counts = new HashMap<YearMonth, Integer>();
+		for(int row = 0; row < size; row++)
+		{
+			counts.merge(YearMonth.from(login[row]), 1, Integer::sum);
+		}
+		return mostCommon(counts);
+	}
+
+
+	/**
+	 * @param counts the number of rows in each month
+	 * @return the month with the most rows, the earliest of those that 
+	 * tie, or null if there are no rows
+	 */
+	static YearMonth mostCommon(Map<YearMonth, Integer> counts)
+	{
+		YearMonth month = null;
+		int most = 0;
+		for(Map.Entry<YearMonth, Integer> count : counts.entrySet())
+		{
+			if(count.getValue() > most || (count.getValue() == most && count.getKey().isBefore(month)))
+			{
+				most = count.getValue();
+				month = count.getKey();
+			}
+		}
+		return month;
+	}
+
+
+	/**
+	 * Groups the row numbers by airline code, keeping file order 
+	 * within each airline.
+	 * @return the rows for each airline code, in order of first appearance
+	 */
+	public Map<String, int[]> rowsByCode()
+	{
+		Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		for(int row = 0; row < size; row++)
+		{
+			Integer count = counts.get(code[row]);
+			counts.put(code[row], (count == null) ? 1 : count + 1);
+		}
+		
+		Map<String, int[]> rows = new LinkedHashMap<String, int[]>();
+		Map<String, Integer> filled = new HashMap<String, Integer>();
+		for(Map.Entry<String, Integer> entry : counts.entrySet())
+		{
+			rows.put(entry.getKey(), new int[entry.getValue()]);
+			filled.put(entry.getKey(), 0);
+		}
+		for(int row = 0; row < size; row++)
+		{
+			int next = filled.get(code[row]);
+			rows.get(code[row])[next] = row;
+			filled.put(code[row], next + 1);
+		}
+		return rows;
+	}
+
+
+	private String share(String name)
+	{
+		String shared = names.get(name);
+		if(shared == null)
+		{
+			names.put(name, name);
+			shared = name;
+		}
+		return shared;
+	}
+}
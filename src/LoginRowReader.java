@@ -0,0 +1,444 @@
+/**
+ * This class reads the line items of a SITA report into a LoginLog.
+ *
+ * Each line is split and checked in a single pass over its
+ * characters: the column count, the workstation, the airline code,
+ * the login timestamp and the duration are all validated without
+ * throwing, so a dirty export never stops the run. A workstation is
+ * valid if it is in the WorkstationMap, whatever airport it is at. Lines that fail
+ * a check are counted by reason and, if a reject file is given,
+ * written to it along with their line number and reason code.
+ * Lines from workstations of classes that are not wanted, such as 
+ * gates when gates are not billed, can be skipped before their 
+ * fields are parsed, and a RowFilter can drop valid lines before
+ * their line items are built.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public class LoginRowReader {
+
+	/**
+	 * The reasons a line can be rejected, in the order they are checked.
+	 */
+	public enum Reason { BLANK_LINE, COLUMN_COUNT, WORKSTATION, AIRLINE_CODE, TIMESTAMP, DURATION }
+
+	/**
+	 * Decides which valid lines are added to the log, e.g. to keep 
+	 * only a sample of them.
+	 */
+	public interface RowFilter {
+		boolean keep(String code, int year, int month, int day);
+	}
+
+	private static final int COLUMNS = 4; // workstation, airline, login, duration
+	private static final int MAXDURATION = 7 * 24 * 60; // longest believable session in minutes
+	private static final char[] SEPARATORS = {'/', '/', ' ', ':'}; // between the fields of M/d/yyyy H:mm
+
+	private String dataFilepath;
+	private Reader source; // used instead of the file path when the data does not come from a file
+	private String rejectFilepath; // null to only count the rejects
+	private BufferedWriter rejectWriter;
+	private int[] rejectCounts = new int[Reason.values().length];
+	private Set<WorkstationClass> classes = EnumSet.allOf(WorkstationClass.class); // the workstations to read
+	private int excluded; // lines skipped because of their workstation's class
+	private RowFilter filter; // null to keep every valid line
+
+	private int[] commas = new int[COLUMNS]; // positions of the first commas of the current line
+	private int found; // number of commas found in the current line, up to COLUMNS
+	private int[] values = new int[SEPARATORS.length + 1]; // timestamp fields as they are read
+
+	// fields of the current line's timestamp, set by parseTimestamp
+	private int year, month, day, hour, minute;
+
+
+	/**
+	 * Reads the line items from a data file, which may be a .gz or a
+	 * .zip of the CSV as exported by SITA.
+	 * @param dataFilepath
+	 * @param rejectFilepath where to write rejected lines, or null
+	 */
+	public LoginRowReader(String dataFilepath, String rejectFilepath)
+	{
+		this.dataFilepath = dataFilepath;
+		this.rejectFilepath = rejectFilepath;
+	}
+
+
+	/**
+	 * Reads the line items from an open stream, such as an upload, 
+	 * counting the rejects without writing them anywhere.
+	 * @param source
+	 */
+	public LoginRowReader(Reader source)
+	{
+		this.source = source;
+	}
+
+
+	/**
+	 * Reads the whole file, skipping its header row.
+	 * @return the valid line items in file order
+	 * @throws IOException if the file cannot be read
+	 */
+	public LoginLog read() throws IOException
+	{
+		LoginLog log = new LoginLog();
+		BufferedReader reader = new BufferedReader((source != null) ? source : new InputStreamReader(DecompressingInputStream.open(dataFilepath)), 1 << 16);
+		try
+		{
+			int lineNumber = 1;
+			if(reader.readLine() == null) //skip the header row of the data file
+			{
+				return log;
+			}
+			String line;
+
+			while((line = reader.readLine()) != null)
+			{
+				readLine(line, ++lineNumber, log);
+			}
+		}
+		finally
+		{
+			reader.close();
+			if(rejectWriter != null)
+			{
+				rejectWriter.close();
+			}
+		}
+		return log;
+	}
+
+
+	/**
+	 * Validates one line and adds it to the log, or rejects it.
+	 * @param line
+	 * @param lineNumber the line's position in the file, for the reject file
+	 * @param log
+	 * @return the line item's row number in the log, or -1 if it was 
+	 * rejected or not kept
+	 * @throws IOException if the reject file cannot be written
+	 */
+	int readLine(String line, int lineNumber, LoginLog log) throws IOException
+	{
+		Reason reason = checkColumns(line);
+		int stationId = -1;
+		if(reason == null)
+		{
+			//workstations are resolved straight from the line's characters
+			stationId = log.getWorkstationMap().lookup(line, 0, commas[0]);
+			if(stationId < 0)
+			{
+				reason = Reason.WORKSTATION;
+			}
+			else if(!classes.contains(log.getWorkstationMap().getWorkstationClass(stationId)))
+			{
+				excluded++;
+				return -1;
+			}
+			else
+			{
+				reason = checkFields(line);
+			}
+		}
+		if(reason != null)
+		{
+			reject(lineNumber, reason, line);
+			return -1;
+		}
+
+		String code = line.substring(commas[0] + 1, commas[1]);
+		if(filter != null && !filter.keep(code, year, month, day))
+		{
+			return -1;
+		}
+		log.add(stationId, null, code, LocalDateTime.of(year, month, day, hour, minute),
+				parseDuration(line, commas[2] + 1, durationEnd(line)));
+		return log.size() - 1;
+	}
+
+
+	/**
+	 * Reads only the lines of workstations of the given classes, e.g. 
+	 * BillingRules.getBilledClasses(). The other lines are skipped as 
+	 * soon as their workstation is known, before the rest of the line 
+	 * is parsed, and are not counted as rejects.
+	 * @param classes
+	 */
+	public void setWorkstationClasses(Set<WorkstationClass> classes)
+	{
+		this.classes = EnumSet.copyOf(classes);
+	}
+
+
+	/**
+	 * Passes each valid line's airline code and login date to the 
+	 * filter, and adds the line to the log only if the filter keeps it.
+	 * @param filter
+	 */
+	public void setRowFilter(RowFilter filter)
+	{
+		this.filter = filter;
+	}
+
+
+	/**
+	 * @return the number of lines skipped because of their workstation's class
+	 */
+	public int getExcludedCount()
+	{
+		return excluded;
+	}
+
+
+	/**
+	 * @return the number of lines rejected for each reason
+	 */
+	public Map<Reason, Integer> getRejectCounts()
+	{
+		Map<Reason, Integer> counts = new EnumMap<Reason, Integer>(Reason.class);
+		for(Reason reason : Reason.values())
+		{
+			counts.put(reason, rejectCounts[reason.ordinal()]);
+		}
+		return counts;
+	}
+
+
+	/**
+	 * @return the total number of rejected lines
+	 */
+	public int getRejectTotal()
+	{
+		int total = 0;
+		for(int count : rejectCounts)
+		{
+			total += count;
+		}
+		return total;
+	}
+
+
+	/**
+	 * Finds the column boundaries of a line and checks that it has a 
+	 * workstation name; whether the name is known is up to the map.
+	 * @param line
+	 * @return the reason the line is rejected, or null if it can be read
+	 */
+	private Reason checkColumns(String line)
+	{
+		if(isBlank(line))
+		{
+			return Reason.BLANK_LINE;
+		}
+
+		found = 0;
+		for(int i = 0; i < line.length() && found < COLUMNS; i++)
+		{
+			if(line.charAt(i) == ',')
+			{
+				commas[found++] = i;
+			}
+		}
+		if(found < COLUMNS - 1)
+		{
+			return Reason.COLUMN_COUNT;
+		}
+
+		if(commas[0] == 0)
+		{
+			return Reason.WORKSTATION;
+		}
+		return null;
+	}
+
+
+	/**
+	 * Validates the airline code, timestamp and duration of a line
+	 * whose columns have been found.
+	 * @param line
+	 * @return the reason the line is rejected, or null if it is valid
+	 */
+	private Reason checkFields(String line)
+	{
+		int codeLength = commas[1] - commas[0] - 1;
+		if(codeLength < 1 || codeLength > 3 || !isAlphanumeric(line, commas[0] + 1, commas[1]))
+		{
+			return Reason.AIRLINE_CODE;
+		}
+
+		if(!parseTimestamp(line, commas[1] + 1, commas[2]))
+		{
+			return Reason.TIMESTAMP;
+		}
+
+		if(parseDuration(line, commas[2] + 1, durationEnd(line)) < 0)
+		{
+			return Reason.DURATION;
+		}
+		return null;
+	}
+
+
+	/**
+	 * @return the position just after the duration, which is the last 
+	 * column unless the line has extra columns
+	 */
+	private int durationEnd(String line)
+	{
+		return (found == COLUMNS) ? commas[COLUMNS - 1] : line.length();
+	}
+
+
+	/**
+	 * Parses a timestamp in the form M/d/yyyy H:mm or M/d/yy H:mm
+	 * into the date and time fields.
+	 * @return false if the text is not a valid timestamp
+	 */
+	private boolean parseTimestamp(String line, int start, int end)
+	{
+		int field = 0;
+		int digits = 0;
+		int value = 0;
+		int yearDigits = 0;
+
+		for(int i = start; i < end; i++)
+		{
+			char c = line.charAt(i);
+			if(c >= '0' && c <= '9')
+			{
+				value = value * 10 + (c - '0');
+				if(++digits > 4)
+				{
+					return false;
+				}
+			}
+			else if(field < SEPARATORS.length && c == SEPARATORS[field] && digits > 0)
+			{
+				if(field == 2)
+				{
+					yearDigits = digits;
+				}
+				values[field++] = value;
+				value = 0;
+				digits = 0;
+			}
+			else
+			{
+				return false;
+			}
+		}
+		if(field != SEPARATORS.length || digits != 2)
+		{
+			return false;
+		}
+		values[4] = value;
+
+		month = values[0];
+		day = values[1];
+		year = (yearDigits == 2) ? 2000 + values[2] : values[2];
+		hour = values[3];
+		minute = values[4];
+
+		if((yearDigits != 2 && yearDigits != 4) || month < 1 || month > 12 || hour > 23 || minute > 59)
+		{
+			return false;
+		}
+		return day >= 1 && day <= YearMonth.of(year, month).lengthOfMonth();
+	}
+
+
+	/**
+	 * @return the duration in minutes, or -1 if it is not a whole
+	 * number of minutes in the accepted range
+	 */
+	private static int parseDuration(String line, int start, int end)
+	{
+		while(start < end && line.charAt(start) == ' ')
+		{
+			start++;
+		}
+		while(end > start && (line.charAt(end - 1) == ' ' || line.charAt(end - 1) == '\r'))
+		{
+			end--;
+		}
+		if(start == end || end - start > 6)
+		{
+			return -1;
+		}
+
+		int value = 0;
+		for(int i = start; i < end; i++)
+		{
+			char c = line.charAt(i);
+			if(c < '0' || c > '9')
+			{
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value <= MAXDURATION ? value : -1;
+	}
+
+
+	/**
+	 * @return true if the line holds nothing but spaces and commas
+	 */
+	private static boolean isBlank(String line)
+	{
+		for(int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			if(c != ',' && !Character.isWhitespace(c))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	private static boolean isAlphanumeric(String line, int start, int end)
+	{
+		for(int i = start; i < end; i++)
+		{
+			if(!Character.isLetterOrDigit(line.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Counts a rejected line and writes it to the reject file.
+	 */
+	private void reject(int lineNumber, Reason reason, String line) throws IOException
+	{
+		rejectCounts[reason.ordinal()]++;
+		if(rejectFilepath == null)
+		{
+			return;
+		}
+
+		if(rejectWriter == null)
+		{
+			rejectWriter = new BufferedWriter(new FileWriter(rejectFilepath));
+			rejectWriter.write("LINE,REASON,RAW\r\n");
+		}
+		rejectWriter.write(lineNumber + "," + reason + ",\"" + line.replace("\"", "\"\"") + "\"\r\n");
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * This class answers drill-down questions about a completed 
+ * billing run from the command line, using the run's 
+ * ResultStore instead of re-reading the report.
+ * 
+ * Each query is a line of the form  airline,date,counter
+ * where any field may be left blank or given as * to match 
+ * everything, e.g.  BW,2019-03-14,Counter 7  or  ,2019-03-14,
+ * Entering  totals  lists the total for every airline.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+public class QueryConsole {
+	private ResultStore results;
+	private PrintStream out;
+
+
+	public QueryConsole(ResultStore results, PrintStream out)
+	{
+		this.results = results;
+		this.out = out;
+	}
+
+
+	/**
+	 * Reads queries from standard input until the end of input
+	 * or a line reading  quit
+	 */
+	public void run()
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		out.println(results.size() + " charged rows loaded. Enter airline,date,counter or totals");
+		try
+		{
+			String line;
+			while((line = in.readLine()) != null && !line.trim().equals("quit"))
+			{
+				if(!line.trim().isEmpty())
+				{
+					out.println(answer(line.trim()));
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * @param query
+	 * @return the formatted answer to a single query
+	 */
+	public String answer(String query)
+	{
+		long start = System.nanoTime();
+		StringBuilder builder = new StringBuilder();
+
+		if(query.equals("totals"))
+		{
+			for(Map.Entry<String, Long> entry : results.totalsByAirline().entrySet())
+			{
+				builder.append(String.format("%-10s%10d%n", entry.getKey(), entry.getValue()));
+			}
+		}
+		else
+		{
+			String[] fields = query.split(",", -1);
+			String code = field(fields, 0);
+			String counter = field(fields, 2);
+			LocalDate date = null;
+			
+			try
+			{
+				String day = field(fields, 1);
+				date = (day == null) ? null : LocalDate.parse(day);
+			}
+			catch(DateTimeParseException e)
+			{
+				return "Dates must be given as yyyy-mm-dd";
+			}
+
+			int rows = results.select(code, date, counter).length;
+			long total = results.totalCharge(code, date, counter);
+			builder.append(String.format("%d rows, total charge %d%n", rows, total));
+		}
+
+		builder.append(String.format("(%.3f ms)", (System.nanoTime() - start) / 1e6));
+		return builder.toString();
+	}
+
+
+	private static String field(String[] fields, int index)
+	{
+		if(index >= fields.length)
+		{
+			return null;
+		}
+		String value = fields[index].trim();
+		return (value.isEmpty() || value.equals("*")) ? null : value;
+	}
+}
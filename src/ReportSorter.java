@@ -0,0 +1,280 @@
+/**
+ * This class puts the report lines of one airline into report order:
+ * by date, then counter, then login time, and for lines that are
+ * equal on all three in the order they were added. That is the order
+ * of ResultStore, so a report and its results list the rows alike,
+ * and it does not depend on the order the log was billed in.
+ *
+ * Lines are collected into runs of at most a fixed number of rows.
+ * When a run is full it is sorted and spilled to a temporary file, so
+ * an airline with more charged rows than fit in memory can still be
+ * sorted. The last run is sorted in memory and all of the runs are
+ * merged with a priority queue of their next lines as the result is
+ * written out, and the spilled files are deleted once they have been
+ * merged or discarded. The run length is set with the cbs.sortrun
+ * system property.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class ReportSorter {
+	public static final int DEFAULT_RUN_ROWS = 100000;
+
+	private final int runRows;
+	private List<Line> run = new ArrayList<Line>();
+	private List<File> spilled = new ArrayList<File>();
+	private long added; // lines added so far, to keep equal lines in order
+
+
+	public ReportSorter()
+	{
+		this(Integer.getInteger("cbs.sortrun", DEFAULT_RUN_ROWS));
+	}
+
+
+	/**
+	 * @param runRows the most lines to hold in memory before spilling them
+	 */
+	public ReportSorter(int runRows)
+	{
+		this.runRows = Math.max(1, runRows);
+	}
+
+
+	/**
+	 * One report line and the fields it is sorted by.
+	 */
+	private static class Line {
+		final long day;
+		final String counter;
+		final int login;
+		final long sequence;
+		final String text;
+
+
+		Line(long day, String counter, int login, long sequence, String text)
+		{
+			this.day = day;
+			this.counter = counter;
+			this.login = login;
+			this.sequence = sequence;
+			this.text = text;
+		}
+	}
+
+
+	private static final Comparator<Line> ORDER = new Comparator<Line>() {
+		public int compare(Line a, Line b)
+		{
+			int result = Long.compare(a.day, b.day);
+			if(result == 0)
+			{
+				result = ResultStore.COUNTER_ORDER.compare(a.counter, b.counter);
+			}
+			if(result == 0)
+			{
+				result = Integer.compare(a.login, b.login);
+			}
+			if(result == 0)
+			{
+				result = Long.compare(a.sequence, b.sequence);
+			}
+			return result;
+		}
+	};
+
+
+	/**
+	 * Adds a report line.
+	 * @param date
+	 * @param counter
+	 * @param login
+	 * @param line the line, ending with \r\n as in the report
+	 * @throws IOException if a full run cannot be spilled
+	 */
+	public void add(LocalDate date, String counter, LocalTime login, String line) throws IOException
+	{
+		run.add(new Line(date.toEpochDay(), counter, login.getHour() * 60 + login.getMinute(), added++, line));
+		if(run.size() >= runRows)
+		{
+			spill();
+		}
+	}
+
+
+	/**
+	 * Sorts the current run and writes it to a temporary file as
+	 * tab separated sort fields followed by the line.
+	 */
+	private void spill() throws IOException
+	{
+		Collections.sort(run, ORDER);
+		File file = File.createTempFile("cbs-run", ".tmp");
+		spilled.add(file);
+
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try
+		{
+			for(Line line : run)
+			{
+				writer.write(line.day + "\t" + line.login + "\t" + line.sequence + "\t" + line.counter + "\t");
+				writer.write(line.text, 0, line.text.length() - 2);
+				writer.newLine();
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+		run.clear();
+	}
+
+
+	/**
+	 * A sorted run being merged, positioned at its next line.
+	 */
+	private static abstract class Cursor {
+		Line next;
+
+		abstract void advance() throws IOException;
+
+		void close() throws IOException {}
+	}
+
+
+	private static class MemoryCursor extends Cursor {
+		private List<Line> lines;
+		private int position;
+
+
+		MemoryCursor(List<Line> lines)
+		{
+			this.lines = lines;
+			advance();
+		}
+
+
+		void advance()
+		{
+			next = (position < lines.size()) ? lines.get(position++) : null;
+		}
+	}
+
+
+	private static class FileCursor extends Cursor {
+		private BufferedReader reader;
+
+
+		FileCursor(File file) throws IOException
+		{
+			reader = new BufferedReader(new FileReader(file));
+			advance();
+		}
+
+
+		void advance() throws IOException
+		{
+			String text = reader.readLine();
+			if(text == null)
+			{
+				next = null;
+				return;
+			}
+			String[] fields = text.split("\t", 5);
+			next = new Line(Long.parseLong(fields[0]), fields[3], Integer.parseInt(fields[1]),
+					Long.parseLong(fields[2]), fields[4] + "\r\n");
+		}
+
+
+		void close() throws IOException
+		{
+			reader.close();
+		}
+	}
+
+
+	/**
+	 * Writes all of the lines in report order and empties the sorter.
+	 * @param out
+	 * @throws IOException if a spilled run cannot be read back
+	 */
+	public void mergeTo(Appendable out) throws IOException
+	{
+		Collections.sort(run, ORDER);
+		if(spilled.isEmpty())
+		{
+			for(Line line : run)
+			{
+				out.append(line.text);
+			}
+			run.clear();
+			return;
+		}
+
+		PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(spilled.size() + 1,
+				(a, b) -> ORDER.compare(a.next, b.next));
+		List<Cursor> cursors = new ArrayList<Cursor>();
+		try
+		{
+			cursors.add(new MemoryCursor(run));
+			for(File file : spilled)
+			{
+				cursors.add(new FileCursor(file));
+			}
+			for(Cursor cursor : cursors)
+			{
+				if(cursor.next != null)
+				{
+					queue.add(cursor);
+				}
+			}
+
+			while(!queue.isEmpty())
+			{
+				Cursor cursor = queue.poll();
+				out.append(cursor.next.text);
+				cursor.advance();
+				if(cursor.next != null)
+				{
+					queue.add(cursor);
+				}
+			}
+		}
+		finally
+		{
+			for(Cursor cursor : cursors)
+			{
+				cursor.close();
+			}
+			discard();
+		}
+	}
+
+
+	/**
+	 * Empties the sorter without writing anything, deleting any
+	 * spilled runs. mergeTo() does this itself; it only has to be
+	 * called when the lines will not be merged.
+	 */
+	public void discard()
+	{
+		for(File file : spilled)
+		{
+			file.delete();
+		}
+		spilled.clear();
+		run.clear();
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * This class is the table model behind the report viewer.
+ * It holds no per-row objects: the visible rows are kept as an 
+ * array of row numbers into a ResultStore and each cell is 
+ * formatted from the store's columns only when the table asks 
+ * for it, so that only the rows on screen are ever turned into 
+ * Swing values.
+ */
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import javax.swing.table.AbstractTableModel;
+
+public class ReportTableModel extends AbstractTableModel {
+	private static final String[] COLUMNS = {"DATE", "COUNTER", "AIRLINE", "LOGIN", 
+			"LOGOUT", "DURATION", "BILLED MINUTES", "BILLED HOURS", "CHARGE"};
+	
+	private ResultStore results;
+	private int[] view; // row numbers in the store, in display order
+	private int sortColumn = -1;
+	private boolean ascending = true;
+
+
+	public ReportTableModel(ResultStore results)
+	{
+		this.results = results;
+		view = results.select(null, null, null);
+	}
+
+
+	public int getRowCount()
+	{
+		return view.length;
+	}
+
+
+	public int getColumnCount()
+	{
+		return COLUMNS.length;
+	}
+
+
+	public String getColumnName(int column)
+	{
+		return COLUMNS[column];
+	}
+
+
+	public Class<?> getColumnClass(int column)
+	{
+		return column >= 5 ? Integer.class : String.class;
+	}
+
+
+	public Object getValueAt(int rowIndex, int column)
+	{
+		int row = view[rowIndex];
+		switch(column)
+		{
+		case 0: return results.getDate(row).toString();
+		case 1: return results.getCounter(row);
+		case 2: return results.getAirline(row);
+		case 3: return results.getLogin(row).toString();
+		case 4: return results.getLogout(row).toString();
+		case 5: return results.getDuration(row);
+		case 6: return results.getBilledMinutes(row);
+		case 7: return results.getBilledHours(row);
+		default: return results.getCharge(row);
+		}
+	}
+
+
+	/**
+	 * Shows only the rows matching the given airline, date and 
+	 * counter; null matches every value. The current sort is kept.
+	 * @param code
+	 * @param date
+	 * @param counter
+	 */
+	public void setFilter(String code, LocalDate date, String counter)
+	{
+		view = results.select(code, date, counter);
+		if(sortColumn >= 0)
+		{
+			sort();
+		}
+		fireTableDataChanged();
+	}
+
+
+	/**
+	 * Sorts the visible rows by the given column, reversing the 
+	 * order if the rows are already sorted by that column.
+	 * @param column
+	 */
+	public void sortBy(int column)
+	{
+		ascending = (column == sortColumn) ? !ascending : true;
+		sortColumn = column;
+		sort();
+		fireTableDataChanged();
+	}
+
+
+	/**
+	 * @return the total charge of the visible rows
+	 */
+	public long getVisibleCharge()
+	{
+		long total = 0;
+		for(int row : view)
+		{
+			total += results.getCharge(row);
+		}
+		return total;
+	}
+
+
+	/**
+	 * Packs each row's sort key and its position in the current view 
+	 * into a long so the view can be sorted as a primitive array.
+	 * Ties keep their current order.
+	 */
+	private void sort()
+	{
+		long[] keys = new long[view.length];
+		for(int i = 0; i < view.length; i++)
+		{
+			long key = sortKey(view[i]);
+			keys[i] = ((ascending ? key : -key) << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		int[] sorted = new int[view.length];
+		for(int i = 0; i < keys.length; i++)
+		{
+			sorted[i] = view[(int)(keys[i] & 0xFFFFFFFFL)];
+		}
+		view = sorted;
+	}
+
+
+	private long sortKey(int row)
+	{
+		switch(sortColumn)
+		{
+		case 0: return results.getEpochDay(row);
+		case 1: return results.getCounterId(row);
+		case 2: return results.getAirlineId(row);
+		case 3: return results.getLoginMinute(row);
+		case 4: return results.getLogoutMinute(row);
+		case 5: return results.getDuration(row);
+		case 6: return results.getBilledMinutes(row);
+		case 7: return results.getBilledHours(row);
+		default: return results.getCharge(row);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * This class sets up the results window that displays the
+ * charged line items of a billing run, with filters for
+ * airline, date and counter. Clicking a column heading
+ * sorts the rows by that column.
+ */
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+
+public class ReportViewer extends JFrame implements ActionListener{
+	private static final String ALL = "All";
+	
+	private ReportTableModel model;
+	private JTable table;
+	private JComboBox<String> airlineBox, counterBox;
+	private JTextField dateTextField;
+	private JButton filterButton;
+	private JLabel statusLabel;
+
+
+	public ReportViewer(ResultStore results)
+	{
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		setTitle("Billing Report");
+		setSize(1000, 600);
+		setLocationRelativeTo(null);
+		model = new ReportTableModel(results);
+		layoutFilters(results);
+		layoutTable();
+		updateStatus();
+	}
+
+
+	/**
+	 * Layout the filter controls along the top of the window
+	 */
+	private void layoutFilters(ResultStore results)
+	{
+		JPanel top = new JPanel();
+		airlineBox = new JComboBox<String>(withAll(results.getAirlines()));
+		counterBox = new JComboBox<String>(withAll(results.getCounters()));
+		dateTextField = new JTextField(10);
+		dateTextField.setToolTipText("yyyy-mm-dd, leave blank for all dates");
+		filterButton = new JButton("Filter");
+		filterButton.addActionListener(this);
+		
+		top.add(new JLabel("Airline"));
+		top.add(airlineBox);
+		top.add(new JLabel("Date"));
+		top.add(dateTextField);
+		top.add(new JLabel("Counter"));
+		top.add(counterBox);
+		top.add(filterButton);
+		add(top, BorderLayout.NORTH);
+	}
+
+
+	/**
+	 * Layout the table and the status line. Rows have a fixed 
+	 * height so the table can work out which rows are visible 
+	 * without measuring any of them.
+	 */
+	private void layoutTable()
+	{
+		table = new JTable(model);
+		table.setRowHeight(18);
+		table.setAutoCreateRowSorter(false);
+		table.getTableHeader().addMouseListener(new MouseAdapter() {
+			public void mouseClicked(MouseEvent e)
+			{
+				int column = table.convertColumnIndexToModel(table.columnAtPoint(e.getPoint()));
+				if(column >= 0)
+				{
+					model.sortBy(column);
+				}
+			}
+		});
+		add(new JScrollPane(table), BorderLayout.CENTER);
+		
+		statusLabel = new JLabel();
+		add(statusLabel, BorderLayout.SOUTH);
+	}
+
+
+	/**
+	 * handles the filter button
+	 */
+	public void actionPerformed(ActionEvent e)
+	{
+		if(e.getSource() == filterButton)
+		{
+			LocalDate date = null;
+			String dateText = dateTextField.getText().trim();
+			
+			try
+			{
+				date = dateText.isEmpty() ? null : LocalDate.parse(dateText);
+			}
+			catch(DateTimeParseException d)
+			{
+				JOptionPane.showMessageDialog(this, "Dates must be given as yyyy-mm-dd");
+				return;
+			}
+			
+			model.setFilter(selected(airlineBox), date, selected(counterBox));
+			updateStatus();
+		}
+	}
+
+
+	private void updateStatus()
+	{
+		statusLabel.setText("  " + model.getRowCount() + " rows, total charge " + model.getVisibleCharge());
+	}
+
+
+	private static String selected(JComboBox<String> box)
+	{
+		String value = (String)box.getSelectedItem();
+		return ALL.equals(value) ? null : value;
+	}
+
+
+	private static String[] withAll(List<String> values)
+	{
+		String[] items = new String[values.size() + 1];
+		items[0] = ALL;
+		for(int i = 0; i < values.size(); i++)
+		{
+			items[i + 1] = values.get(i);
+		}
+		return items;
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * This class keeps the reports of completed billing runs on 
+ * disk so that running the same pair of files again returns 
+ * the stored report straight away instead of re-billing.
+ * 
+ * Each entry is keyed by a SHA-256 hash of the contents of the 
+ * data file, the schedule file, the billing parameters and the 
+ * workstation map in use, so a change to any of them is a miss. 
+ * The hash also covers the version of the report layout, so 
+ * reports written in an older row order are not returned. The 
+ * least recently used entries are removed once the cache grows 
+ * past its size limit.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class ResultCache {
+	private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+	private static final String REPORT_LAYOUT = "sorted-3"; // change whenever the report's rows, lines or key inputs change
+	
+	private File directory;
+	private long maxBytes; // total size of the cached reports before eviction starts
+	
+	
+	public ResultCache()
+	{
+		this(".cbscache", DEFAULT_MAX_BYTES);
+	}
+	
+	
+	public ResultCache(String directory, long maxBytes)
+	{
+		this.directory = new File(directory);
+		this.maxBytes = maxBytes;
+	}
+	
+	
+	/**
+	 * Returns the results for the given files, from the cache if 
+	 * the same files have been billed before and otherwise by 
+	 * running the Controller and storing its report. Either way 
+	 * the report is left in the Controller's output file.
+	 * @param data
+	 * @param schedule
+	 * @return the charged rows of the run
+	 * @throws IOException
+	 */
+	public ResultStore bill(String data, String schedule) throws IOException
+	{
+		String key = key(data, schedule, new DaySchedule().getBillingParameters());
+		File entry = new File(directory, key + ".csv");
+		
+		if(entry.isFile())
+		{
+			// mark the entry as recently used
+			entry.setLastModified(System.currentTimeMillis());
+			File output = new File(Controller.REPORT_FILENAME);
+			Files.copy(entry.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return ResultStore.load(output.getPath());
+		}
+		
+		Controller controller = new Controller(data, schedule, key);
+		directory.mkdirs();
+		File temp = new File(directory, key + ".tmp");
+		Files.copy(new File(controller.getOutputFilename()).toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		evict();
+		return controller.getResults();
+	}
+	
+	
+	/**
+	 * @param data
+	 * @param schedule
+	 * @param parameters
+	 * @return the hex SHA-256 hash of both files' contents, the parameters 
+	 * and the default workstation map
+	 * @throws IOException
+	 */
+	public static String key(String data, String schedule, String parameters) throws IOException
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			update(digest, data);
+			update(digest, schedule);
+			digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+			digest.update(WorkstationMap.getDefault().describe().getBytes(StandardCharsets.UTF_8));
+			digest.update(REPORT_LAYOUT.getBytes(StandardCharsets.UTF_8));
+			
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest.digest())
+			{
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IOException(e);
+		}
+	}
+	
+	
+	/**
+	 * Adds a file's length and contents to the hash. The length 
+	 * keeps the boundary between the two files unambiguous.
+	 */
+	private static void update(MessageDigest digest, String filepath) throws IOException
+	{
+		File file = new File(filepath);
+		digest.update(Long.toString(file.length()).getBytes(StandardCharsets.UTF_8));
+		
+		byte[] buffer = new byte[64 * 1024];
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			int read;
+			while((read = in.read(buffer)) > 0)
+			{
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	
+	/**
+	 * Removes the least recently used entries until the cache 
+	 * is within its size limit.
+	 */
+	private void evict()
+	{
+		File[] entries = directory.listFiles((dir, name) -> name.endsWith(".csv"));
+		if(entries == null)
+		{
+			return;
+		}
+		
+		long total = 0;
+		for(File entry : entries)
+		{
+			total += entry.length();
+		}
+		
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+		for(int i = 0; i < entries.length && total > maxBytes; i++)
+		{
+			total -= entries[i].length();
+			entries[i].delete();
+		}
+	}
+}
@@ -0,0 +1,659 @@
+/**
+ * This class keeps the charged line items of a billing run in
+ * memory as primitive columns so that they can be queried
+ * without re-reading the report or re-billing the month.
+ *
+ * The rows are sorted by airline, date, counter and login time.
+ * Offsets into that order are kept for each airline, and
+ * separate row groupings are kept for each date and each counter,
+ * along with a running sum of the charges, so that totals for any
+ * combination of airline, date and counter can be answered with
+ * a few binary searches.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ResultStore {
+	private String[] airlines; // airline codes, sorted, indexed by airline id
+	private String[] counters; // counter names, sorted, indexed by counter id
+	private Map<String, Integer> airlineIds;
+	private Map<String, Integer> counterIds;
+
+	private int size;
+	private int[] airline, date, counter, login, logout, duration, billedMinutes, billedHours, charge;
+	private long[] chargePrefix; // chargePrefix[i] = sum of the charges of rows 0 to i-1
+
+	private int[] airlineOffsets; // rows of airline a are airlineOffsets[a] to airlineOffsets[a+1]-1
+	private int firstDate; // epoch day of the earliest row
+	private int[] dateOffsets, dateRows; // row numbers grouped by date
+	private int[] counterOffsets, counterRows; // row numbers grouped by counter
+
+
+	private ResultStore(Builder builder)
+	{
+		airlines = sortedKeys(builder.airlineIds, null);
+		counters = sortedKeys(builder.counterIds, COUNTER_ORDER);
+		airlineIds = indexOf(airlines);
+		counterIds = indexOf(counters);
+		size = builder.size;
+
+		// translate the builder's first-seen ids to the sorted ids
+		int[] airlineMap = remap(builder.airlineIds, airlineIds);
+		int[] counterMap = remap(builder.counterIds, counterIds);
+		int[] rawAirline = new int[size];
+		int[] rawCounter = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			rawAirline[i] = airlineMap[builder.airline[i]];
+			rawCounter[i] = counterMap[builder.counter[i]];
+		}
+
+		firstDate = Integer.MAX_VALUE;
+		int lastDate = Integer.MIN_VALUE;
+		for(int i = 0; i < size; i++)
+		{
+			firstDate = Math.min(firstDate, builder.date[i]);
+			lastDate = Math.max(lastDate, builder.date[i]);
+		}
+		int numDates = size == 0 ? 0 : lastDate - firstDate + 1;
+		int[] rawDate = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			rawDate[i] = builder.date[i] - firstDate;
+		}
+
+		// least significant key first, each pass is a stable counting sort
+		int[] order = identity(size);
+		order = countingSort(order, builder.login, 24 * 60);
+		order = countingSort(order, rawCounter, counters.length);
+		order = countingSort(order, rawDate, numDates);
+		order = countingSort(order, rawAirline, airlines.length);
+
+		airline = permute(rawAirline, order);
+		date = permute(builder.date, order);
+		counter = permute(rawCounter, order);
+		login = permute(builder.login, order);
+		logout = permute(builder.logout, order);
+		duration = permute(builder.duration, order);
+		billedMinutes = permute(builder.billedMinutes, order);
+		billedHours = permute(builder.billedHours, order);
+		charge = permute(builder.charge, order);
+
+		chargePrefix = new long[size + 1];
+		for(int i = 0; i < size; i++)
+		{
+			chargePrefix[i + 1] = chargePrefix[i] + charge[i];
+		}
+
+		airlineOffsets = offsets(airline, airlines.length);
+
+		int[] dateKey = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			dateKey[i] = date[i] - firstDate;
+		}
+		dateOffsets = offsets(dateKey, numDates);
+		dateRows = countingSort(identity(size), dateKey, numDates);
+		counterOffsets = offsets(counter, counters.length);
+		counterRows = countingSort(identity(size), counter, counters.length);
+	}
+
+
+	/**
+	 * Reads the charged rows back out of a report file written by
+	 * the Controller, skipping the headings and the airline totals.
+	 * @param reportFilepath
+	 * @return the store of the report's rows
+	 * @throws IOException
+	 */
+	public static ResultStore load(String reportFilepath) throws IOException
+	{
+		Builder builder = new Builder();
+		BufferedReader reader = new BufferedReader(new FileReader(reportFilepath));
+		try
+		{
+			reader.readLine(); // skip the headings
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				String[] fields = line.split(",");
+				
+				// total lines start with a comma and the gaps between airlines are blank
+				if(fields.length < 9 || fields[0].trim().isEmpty())
+				{
+					continue;
+				}
+				builder.add(LocalDate.parse(fields[0].trim()), fields[1].trim(), fields[2].trim(), 
+						LocalTime.parse(fields[3].trim()), LocalTime.parse(fields[4].trim()), 
+						Integer.parseInt(fields[5].trim()), Integer.parseInt(fields[6].trim()), 
+						Integer.parseInt(fields[7].trim()), Integer.parseInt(fields[8].trim()));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return builder.build();
+	}
+
+
+	/**
+	 * @return the number of charged rows in the store
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+
+	public String getAirline(int row)
+	{
+		return airlines[airline[row]];
+	}
+
+
+	public LocalDate getDate(int row)
+	{
+		return LocalDate.ofEpochDay(date[row]);
+	}
+
+
+	public String getCounter(int row)
+	{
+		return counters[counter[row]];
+	}
+
+
+	public LocalTime getLogin(int row)
+	{
+		return LocalTime.ofSecondOfDay(login[row] * 60);
+	}
+
+
+	public LocalTime getLogout(int row)
+	{
+		return LocalTime.ofSecondOfDay(logout[row] * 60);
+	}
+
+
+	public int getDuration(int row)
+	{
+		return duration[row];
+	}
+
+
+	public int getBilledMinutes(int row)
+	{
+		return billedMinutes[row];
+	}
+
+
+	public int getBilledHours(int row)
+	{
+		return billedHours[row];
+	}
+
+
+	public int getCharge(int row)
+	{
+		return charge[row];
+	}
+
+
+	/**
+	 * @return the position of the row's airline in getAirlines()
+	 */
+	public int getAirlineId(int row)
+	{
+		return airline[row];
+	}
+
+
+	/**
+	 * @return the position of the row's counter in getCounters()
+	 */
+	public int getCounterId(int row)
+	{
+		return counter[row];
+	}
+
+
+	public int getEpochDay(int row)
+	{
+		return date[row];
+	}
+
+
+	public int getLoginMinute(int row)
+	{
+		return login[row];
+	}
+
+
+	public int getLogoutMinute(int row)
+	{
+		return logout[row];
+	}
+
+
+	/**
+	 * @return the airline codes in the store, in sorted order
+	 */
+	public List<String> getAirlines()
+	{
+		return Collections.unmodifiableList(Arrays.asList(airlines));
+	}
+
+
+	/**
+	 * @return the counter names in the store, in sorted order
+	 */
+	public List<String> getCounters()
+	{
+		return Collections.unmodifiableList(Arrays.asList(counters));
+	}
+
+
+	/**
+	 * Returns the rows matching the given airline, date and counter.
+	 * Any of the three may be null to match every value.
+	 * @param code
+	 * @param day
+	 * @param counterName
+	 * @return row numbers in airline, date, counter and login order
+	 */
+	public int[] select(String code, LocalDate day, String counterName)
+	{
+		int[] range = range(code, day, counterName);
+		if(range != null)
+		{
+			return rangeRows(range[0], range[1]);
+		}
+
+		int[] group = group(day, counterName);
+		if(group == null)
+		{
+			return new int[0];
+		}
+		int[] rows = new int[group[2] - group[1]];
+		int count = 0;
+		for(int i = group[1]; i < group[2]; i++)
+		{
+			int row = group[0] == 0 ? dateRows[i] : counterRows[i];
+			if(matches(row, code, day, counterName))
+			{
+				rows[count++] = row;
+			}
+		}
+		return Arrays.copyOf(rows, count);
+	}
+
+
+	/**
+	 * Returns the total charge for the rows matching the given
+	 * airline, date and counter. Any of the three may be null
+	 * to match every value.
+	 * @param code
+	 * @param day
+	 * @param counterName
+	 * @return total charge
+	 */
+	public long totalCharge(String code, LocalDate day, String counterName)
+	{
+		int[] range = range(code, day, counterName);
+		if(range != null)
+		{
+			return chargePrefix[range[1]] - chargePrefix[range[0]];
+		}
+
+		long total = 0;
+		for(int row : select(code, day, counterName))
+		{
+			total += charge[row];
+		}
+		return total;
+	}
+
+
+	/**
+	 * @return the total charge for each airline, in airline order
+	 */
+	public Map<String, Long> totalsByAirline()
+	{
+		Map<String, Long> totals = new LinkedHashMap<String, Long>();
+		for(int a = 0; a < airlines.length; a++)
+		{
+			totals.put(airlines[a], chargePrefix[airlineOffsets[a + 1]] - chargePrefix[airlineOffsets[a]]);
+		}
+		return totals;
+	}
+
+
+	/**
+	 * Finds the contiguous block of rows for a query that names an
+	 * airline, or a query with no criteria at all.
+	 * @return {from, to} or null if the query has to use a grouping
+	 */
+	private int[] range(String code, LocalDate day, String counterName)
+	{
+		if(code == null)
+		{
+			return (day == null && counterName == null) ? new int[] {0, size} : null;
+		}
+
+		Integer a = airlineIds.get(code);
+		if(a == null)
+		{
+			return new int[] {0, 0};
+		}
+		int from = airlineOffsets[a];
+		int to = airlineOffsets[a + 1];
+
+		if(day != null)
+		{
+			int key = (int)day.toEpochDay();
+			int lower = lowerBound(date, from, to, key);
+			to = lowerBound(date, lower, to, key + 1);
+			from = lower;
+
+			if(counterName != null)
+			{
+				Integer c = counterIds.get(counterName);
+				if(c == null)
+				{
+					return new int[] {0, 0};
+				}
+				lower = lowerBound(counter, from, to, c);
+				to = lowerBound(counter, lower, to, c + 1);
+				from = lower;
+			}
+		}
+		else if(counterName != null)
+		{
+			// counters are only sorted within each date
+			return null;
+		}
+		return new int[] {from, to};
+	}
+
+
+	/**
+	 * @return {0 for dates or 1 for counters, from, to}, or null if nothing matches
+	 */
+	private int[] group(LocalDate day, String counterName)
+	{
+		if(day != null)
+		{
+			int key = (int)day.toEpochDay() - firstDate;
+			if(key < 0 || key >= dateOffsets.length - 1)
+			{
+				return null;
+			}
+			return new int[] {0, dateOffsets[key], dateOffsets[key + 1]};
+		}
+
+		Integer c = counterIds.get(counterName);
+		if(c == null)
+		{
+			return null;
+		}
+		return new int[] {1, counterOffsets[c], counterOffsets[c + 1]};
+	}
+
+
+	private boolean matches(int row, String code, LocalDate day, String counterName)
+	{
+		return (code == null || airlines[airline[row]].equals(code))
+				&& (day == null || date[row] == day.toEpochDay())
+				&& (counterName == null || counters[counter[row]].equals(counterName));
+	}
+
+
+	private static int[] rangeRows(int from, int to)
+	{
+		int[] rows = new int[to - from];
+		for(int i = 0; i < rows.length; i++)
+		{
+			rows[i] = from + i;
+		}
+		return rows;
+	}
+
+
+	/**
+	 * @return the first position in from to to-1 whose value is at least key
+	 */
+	private static int lowerBound(int[] column, int from, int to, int key)
+	{
+		int low = from;
+		int high = to;
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if(column[mid] < key)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+
+	/**
+	 * Stable counting sort of the row numbers in order by the given key column.
+	 * @param order
+	 * @param key values from 0 to range-1, indexed by row number
+	 * @param range
+	 * @return the reordered row numbers
+	 */
+	private static int[] countingSort(int[] order, int[] key, int range)
+	{
+		int[] start = new int[range + 1];
+		for(int row : order)
+		{
+			start[key[row] + 1]++;
+		}
+		for(int k = 0; k < range; k++)
+		{
+			start[k + 1] += start[k];
+		}
+		int[] sorted = new int[order.length];
+		for(int row : order)
+		{
+			sorted[start[key[row]]++] = row;
+		}
+		return sorted;
+	}
+
+
+	/**
+	 * @return offsets[k] = the position of the first row with a key of k
+	 * in a column sorted by key
+	 */
+	private static int[] offsets(int[] key, int range)
+	{
+		int[] offsets = new int[range + 1];
+		for(int k : key)
+		{
+			offsets[k + 1]++;
+		}
+		for(int k = 0; k < range; k++)
+		{
+			offsets[k + 1] += offsets[k];
+		}
+		return offsets;
+	}
+
+
+	private static int[] identity(int size)
+	{
+		int[] order = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			order[i] = i;
+		}
+		return order;
+	}
+
+
+	private static int[] permute(int[] column, int[] order)
+	{
+		int[] sorted = new int[order.length];
+		for(int i = 0; i < order.length; i++)
+		{
+			sorted[i] = column[order[i]];
+		}
+		return sorted;
+	}
+
+
+	private static String[] sortedKeys(Map<String, Integer> ids, Comparator<String> comparator)
+	{
+		List<String> keys = new ArrayList<String>(ids.keySet());
+		Collections.sort(keys, comparator);
+		return keys.toArray(new String[keys.size()]);
+	}
+
+
+	private static Map<String, Integer> indexOf(String[] keys)
+	{
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for(int i = 0; i < keys.length; i++)
+		{
+			ids.put(keys[i], i);
+		}
+		return ids;
+	}
+
+
+	private static int[] remap(Map<String, Integer> from, Map<String, Integer> to)
+	{
+		int[] map = new int[from.size()];
+		for(Map.Entry<String, Integer> entry : from.entrySet())
+		{
+			map[entry.getValue()] = to.get(entry.getKey());
+		}
+		return map;
+	}
+
+
+	/**
+	 * Orders counter names by their text and then by their number,
+	 * so that "Counter 2" comes before "Counter 10".
+	 */
+	public static final Comparator<String> COUNTER_ORDER = new Comparator<String>() {
+		public int compare(String a, String b)
+		{
+			int split1 = a.lastIndexOf(' ');
+			int split2 = b.lastIndexOf(' ');
+			int result = a.substring(0, split1 + 1).compareTo(b.substring(0, split2 + 1));
+			if(result != 0)
+			{
+				return result;
+			}
+			try
+			{
+				return Integer.compare(Integer.parseInt(a.substring(split1 + 1)), Integer.parseInt(b.substring(split2 + 1)));
+			}
+			catch(NumberFormatException e)
+			{
+				return a.compareTo(b);
+			}
+		}
+	};
+
+
+	/**
+	 * Collects the charged rows of a billing run in the order they
+	 * are produced and sorts them into a ResultStore.
+	 */
+	public static class Builder {
+		private Map<String, Integer> airlineIds = new HashMap<String, Integer>();
+		private Map<String, Integer> counterIds = new HashMap<String, Integer>();
+		private int size;
+		private int[] airline = new int[1024], date = new int[1024], counter = new int[1024],
+				login = new int[1024], logout = new int[1024], duration = new int[1024],
+				billedMinutes = new int[1024], billedHours = new int[1024], charge = new int[1024];
+
+
+		/**
+		 * Adds a charged row.
+		 * @param day the date of the login
+		 * @param counterName
+		 * @param code
+		 * @param loginTime
+		 * @param logoutTime
+		 * @param minutes the logged in duration
+		 * @param chargedMinutes
+		 * @param chargedHours
+		 * @param amount
+		 */
+		public synchronized void add(LocalDate day, String counterName, String code, LocalTime loginTime,
+				LocalTime logoutTime, int minutes, int chargedMinutes, int chargedHours, int amount)
+		{
+			if(size == airline.length)
+			{
+				grow();
+			}
+			airline[size] = id(airlineIds, code);
+			date[size] = (int)day.toEpochDay();
+			counter[size] = id(counterIds, counterName);
+			login[size] = loginTime.getHour() * 60 + loginTime.getMinute();
+			logout[size] = logoutTime.getHour() * 60 + logoutTime.getMinute();
+			duration[size] = minutes;
+			billedMinutes[size] = chargedMinutes;
+			billedHours[size] = chargedHours;
+			charge[size] = amount;
+			size++;
+		}
+
+
+		public synchronized ResultStore build()
+		{
+			return new ResultStore(this);
+		}
+
+
+		private static int id(Map<String, Integer> ids, String key)
+		{
+			Integer id = ids.get(key);
+			if(id == null)
+			{
+				id = ids.size();
+				ids.put(key, id);
+			}
+			return id;
+		}
+
+
+		private void grow()
+		{
+			int capacity = airline.length * 2;
+			airline = Arrays.copyOf(airline, capacity);
+			date = Arrays.copyOf(date, capacity);
+			counter = Arrays.copyOf(counter, capacity);
+			login = Arrays.copyOf(login, capacity);
+			logout = Arrays.copyOf(logout, capacity);
+			duration = Arrays.copyOf(duration, capacity);
+			billedMinutes = Arrays.copyOf(billedMinutes, capacity);
+			billedHours = Arrays.copyOf(billedHours, capacity);
+			charge = Arrays.copyOf(charge, capacity);
+		}
+	}
+}
@@ -6,13 +6,130 @@
  * outside of each airline's designated time periods
  * (Based on the schedule of departures)
  * 
+ * Run without arguments to open the GUI, or with
+ *   query <data file> <schedule file>
+ * to bill the files and then query the results from
+ * the command line, or with
+ *   whatif <data file> <schedule file> <grace:charge:allowed[:gate allowed]>...
+ * to compare the airline totals under different billing rules, or with
+ *   serve <schedule file> [port] [max concurrent requests]
+ * to run the local HTTP billing service, or with
+ *   diff <data file> <schedule file> [candidate engine class]
+ *   diff generate <seed> <flights> <rows> [candidate engine class]
+ * to check a billing engine against the legacy one, or with
+ *   live <schedule file> <port | spool directory>
+ * to bill counter sessions from login and logout events as they happen, or with
+ *   impact <data file> <old schedule file> <new schedule file>
+ * to update Report.csv for a changed schedule by re-billing only the 
+ * airlines and dates that the change affects, or with
+ *   history add [report file] | ytd [date] | trend <airline> | months
+ * to keep finished runs and query year to date and monthly figures.
+ * 
+ * Run with -Dcbs.attribution=true to also write Attribution.csv, which
+ * gives the flights and periods behind each charged row.
+ * 
  * @author Khari
  *
  */
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class RunCBS {
 	public static void main(String[] args) {
 		
-		new CBSGUI().setVisible(true);	
+		if(args.length == 3 && args[0].equals("query"))
+		{
+			Controller controller = new Controller(args[1], args[2]);
+			new QueryConsole(controller.getResults(), System.out).run();
+		}
+		else if(args.length >= 4 && args[0].equals("whatif"))
+		{
+			List<BillingRules> scenarios = new ArrayList<BillingRules>();
+			for(int i = 3; i < args.length; i++)
+			{
+				scenarios.add(BillingRules.parse(args[i]));
+			}
+			
+			try
+			{
+				WhatIfAnalyzer analyzer = new WhatIfAnalyzer(args[1], args[2]);
+				String table = analyzer.compare(scenarios);
+				long[] elapsed = analyzer.getElapsedNanos();
+				for(int i = 0; i < scenarios.size(); i++)
+				{
+					System.out.println(String.format("Scenario %s billed in %.1f ms", scenarios.get(i).getLabel(), elapsed[i] / 1e6));
+				}
+				System.out.print(table);
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		else if(args.length >= 2 && args[0].equals("serve"))
+		{
+			int port = (args.length > 2) ? Integer.parseInt(args[2]) : 8080;
+			int maxConcurrent = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+			
+			try
+			{
+				new BillingServer(args[1], port, maxConcurrent).start();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		else if(args.length >= 3 && args[0].equals("diff"))
+		{
+			try
+			{
+				BillingHarness.main(Arrays.copyOfRange(args, 1, args.length));
+			}
+			catch(Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+		else if(args.length == 4 && args[0].equals("impact"))
+		{
+			try
+			{
+				ScheduleImpact.run(args[1], args[2], args[3]);
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		else if(args.length >= 1 && args[0].equals("history"))
+		{
+			try
+			{
+				ChargeHistory.run(Arrays.copyOfRange(args, 1, args.length));
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		else if(args.length == 3 && args[0].equals("live"))
+		{
+			try
+			{
+				LiveSessionTracker.run(args[1], args[2]);
+			}
+			catch(IOException | InterruptedException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		else
+		{
+			new CBSGUI().setVisible(true);	
+		}
 	}
 }
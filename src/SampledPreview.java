@@ -0,0 +1,274 @@
+/**
+ * This class estimates each airline's total charge from a sample of
+ * the month's rows, so that approximate figures can be shown long
+ * before a big month has been billed in full.
+ *
+ * The rows are split into strata by airline and login date. A fixed
+ * share of each stratum, and never fewer than a handful of rows, is
+ * drawn at random and billed with processStationRow exactly as in a
+ * full run. The draw is made while the file is read: each row is
+ * given a random key, the rows of a stratum with the smallest keys
+ * are its sample, and only the rows that can still be among those
+ * are kept, so a big month is never held in memory in full. An airline's estimate is the sum over its days of the
+ * day's row count times the mean charge of its sampled rows, and the
+ * interval is the usual 95% one for a stratified sample, taking the
+ * share of each day that was not sampled into account. Days with few
+ * rows are billed in full and add nothing to the interval.
+ *
+ * The intervals assume charges are roughly normal within a day, which
+ * is not so when only a few of an airline's rows are ever charged, so
+ * the estimates are a preview and not a substitute for the full run.
+ */
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class SampledPreview {
+	public static final double SAMPLE_FRACTION = 0.05;
+	public static final int MIN_PER_STRATUM = 5;
+	private static final double KEEP_FRACTION = 2 * SAMPLE_FRACTION; // rows kept whatever their stratum's size
+	private static final double Z95 = 1.96;
+
+	private Map<String, double[]> estimates = new TreeMap<String, double[]>(); // airline -> {estimate, variance}
+	private int rows;
+	private int sampledRows;
+
+
+	/**
+	 * Bills the sample kept by the sampler.
+	 * @param log the rows the sampler kept, in the order it kept them
+	 * @param sampler
+	 * @param snapshot the schedule and rules to bill with
+	 */
+	private SampledPreview(LoginLog log, Sampler sampler, ScheduleSnapshot snapshot)
+	{
+		DaySchedule[] schedules = snapshot.getSchedules();
+		rows = sampler.rows;
+
+		for(Map.Entry<String, int[]> airline : log.rowsByCode().entrySet())
+		{
+			String code = airline.getKey();
+			Map<Long, Stratum> strata = sampler.strata.get(code);
+			double[] estimate = new double[2];
+			for(Map.Entry<Long, List<Integer>> day : byDate(log, airline.getValue()).entrySet())
+			{
+				List<Integer> kept = day.getValue();
+				kept.sort((a, b) -> Double.compare(sampler.keys[a], sampler.keys[b]));
+				int size = strata.get(day.getKey()).size;
+				int n = Math.min(size, Math.max(MIN_PER_STRATUM, (int)Math.ceil(size * SAMPLE_FRACTION)));
+
+				// the rows with the n smallest keys are a sample without replacement, and the
+				// sampler kept every row whose key is below KEEP_FRACTION and the smallest few
+				int candidates = 0;
+				for(int row : kept)
+				{
+					if(sampler.keys[row] < KEEP_FRACTION)
+					{
+						candidates++;
+					}
+				}
+				n = Math.min(n, Math.max(Math.min(size, MIN_PER_STRATUM), candidates));
+
+				double sum = 0;
+				double sumOfSquares = 0;
+				for(int i = 0; i < n; i++)
+				{
+					int charge = bill(log, kept.get(i), code, schedules);
+					sum += charge;
+					sumOfSquares += (double)charge * charge;
+				}
+				sampledRows += n;
+
+				double mean = sum / n;
+				estimate[0] += size * mean;
+				if(n > 1 && n < size)
+				{
+					double sampleVariance = (sumOfSquares - n * mean * mean) / (n - 1);
+					estimate[1] += (double)size * size * (1 - (double)n / size) * sampleVariance / n;
+				}
+			}
+			estimates.put(code, estimate);
+		}
+	}
+
+
+	/**
+	 * Reads the data file and bills a sample of it. Only the rows that
+	 * may be sampled are kept as the file is read; the rest are just
+	 * counted.
+	 * @param dataFilepath
+	 * @param scheduleFilepath
+	 * @param rules
+	 * @throws IOException
+	 */
+	public static SampledPreview bill(String dataFilepath, String scheduleFilepath, BillingRules rules) throws IOException
+	{
+		Sampler sampler = new Sampler(dataFilepath.hashCode());
+		LoginRowReader reader = new LoginRowReader(dataFilepath, null);
+		reader.setWorkstationClasses(rules.getBilledClasses());
+		reader.setRowFilter(sampler);
+		LoginLog log = reader.read();
+		ScheduleSnapshot snapshot = ScheduleSnapshot.read(scheduleFilepath).toBuilder().setRules(rules).build();
+		return new SampledPreview(log, sampler, snapshot);
+	}
+
+
+	/**
+	 * @return the airline's rows by login date
+	 */
+	private static Map<Long, List<Integer>> byDate(LoginLog log, int[] airlineRows)
+	{
+		Map<Long, List<Integer>> days = new HashMap<Long, List<Integer>>();
+		for(int row : airlineRows)
+		{
+			days.computeIfAbsent(log.getLogin(row).toLocalDate().toEpochDay(), d -> new ArrayList<Integer>()).add(row);
+		}
+		return days;
+	}
+
+
+	/**
+	 * @return the row's charge, or 0 if it is not charged
+	 */
+	private static int bill(LoginLog log, int row, String code, DaySchedule[] schedules)
+	{
+		LocalDateTime dateTime = log.getLogin(row);
+		String[] chargedItems = schedules[dateTime.getDayOfWeek().getValue()-1].processStationRow(
+				log.getWorkstationClass(row), log.getCounter(row), code, dateTime, log.getDuration(row));
+
+		//chargedItems[6] = the amount charged, which like the report counts only if it is positive
+		return (chargedItems == null) ? 0 : Math.max(0, Integer.parseInt(chargedItems[6]));
+	}
+
+
+	/**
+	 * @return the airlines with an estimate, in code order
+	 */
+	public List<String> getAirlines()
+	{
+		return new ArrayList<String>(estimates.keySet());
+	}
+
+
+	/**
+	 * @param code
+	 * @return the estimated total charge for the airline
+	 */
+	public long getEstimate(String code)
+	{
+		return Math.round(estimates.get(code)[0]);
+	}
+
+
+	/**
+	 * @param code
+	 * @return half the width of the 95% interval around the estimate
+	 */
+	public long getMargin(String code)
+	{
+		return Math.round(Z95 * Math.sqrt(estimates.get(code)[1]));
+	}
+
+
+	/**
+	 * @return the number of rows the estimates are for
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+
+	/**
+	 * @return the number of rows that were billed
+	 */
+	public int getSampledRows() {
+		return sampledRows;
+	}
+
+
+	/**
+	 * Keys each valid row at random as it is read and keeps those that
+	 * may be in the sample: every row whose key is below KEEP_FRACTION,
+	 * and any row whose key is among the MIN_PER_STRATUM smallest of its
+	 * stratum so far.
+	 */
+	private static class Sampler implements LoginRowReader.RowFilter {
+		private Random random;
+		private Map<String, Map<Long, Stratum>> strata = new HashMap<String, Map<Long, Stratum>>(); // airline -> day -> stratum
+		private double[] keys = new double[1024]; // key of each kept row, in the order they were kept
+		private int kept;
+		private int rows;
+
+
+		Sampler(long seed)
+		{
+			random = new Random(seed);
+		}
+
+
+		public boolean keep(String code, int year, int month, int day)
+		{
+			Stratum stratum = strata.computeIfAbsent(code, c -> new HashMap<Long, Stratum>())
+					.computeIfAbsent(LocalDate.of(year, month, day).toEpochDay(), d -> new Stratum());
+			double key = random.nextDouble();
+			rows++;
+			stratum.size++;
+			if(!stratum.offer(key) && key >= KEEP_FRACTION)
+			{
+				return false;
+			}
+
+			if(kept == keys.length)
+			{
+				keys = Arrays.copyOf(keys, kept * 2);
+			}
+			keys[kept++] = key;
+			return true;
+		}
+	}
+
+
+	/**
+	 * The row count of one airline's day and the smallest keys seen in it.
+	 */
+	private static class Stratum {
+		private int size;
+		private double[] smallest = new double[MIN_PER_STRATUM];
+		private int held;
+
+
+		/**
+		 * @return true if the key is among the smallest so far
+		 */
+		boolean offer(double key)
+		{
+			if(held < smallest.length)
+			{
+				smallest[held++] = key;
+				return true;
+			}
+			int largest = 0;
+			for(int i = 1; i < held; i++)
+			{
+				if(smallest[i] > smallest[largest])
+				{
+					largest = i;
+				}
+			}
+			if(key >= smallest[largest])
+			{
+				return false;
+			}
+			smallest[largest] = key;
+			return true;
+		}
+	}
+}
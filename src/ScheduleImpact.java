@@ -0,0 +1,351 @@
+/**
+ * This class brings a month's report up to date after the schedule
+ * has changed, by re-billing only the rows the change can affect
+ * instead of the whole month.
+ *
+ * The two schedules are compared flight by flight. A row is billed
+ * against all of its airline's flights on that day of the week, so
+ * a flight that was added, removed or changed affects its airline on
+ * every date that falls on one of the flight's days of operation,
+ * whatever its start and end dates. Airlines that share a hash
+ * bucket with it in DaySchedule are affected too. Only the rows of
+ * those (airline, date) partitions are billed again; the rest of the
+ * report is kept as it is.
+ *
+ * The report must be the one produced from the same data file and
+ * the old schedule. It is rewritten in place, with each rebuilt
+ * airline's rows sorted as a full run would sort them, and Impact.csv
+ * lists the partitions whose charges changed.
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ScheduleImpact {
+	public static final String IMPACT_FILENAME = "Impact.csv";
+	private static final String TOTAL_PREFIX = ",,,,,,,TOTAL CHARGE FOR ";
+
+	private LoginLog log;
+	private ScheduleSnapshot after;
+	private List<Flight> added = new ArrayList<Flight>();
+	private List<Flight> removed = new ArrayList<Flight>();
+	private Map<String, boolean[]> affectedDays = new HashMap<String, boolean[]>(); // airline -> days of the week, Monday first
+	private Map<String, int[]> changes = new TreeMap<String, int[]>(); // "airline,date" -> {old charge, new charge}
+	private int rebilledRows;
+
+
+	/**
+	 * Compares the schedules and works out which partitions of
+	 * the log they bill differently.
+	 * @param log
+	 * @param before the schedule the report was billed with
+	 * @param after the new schedule
+	 */
+	public ScheduleImpact(LoginLog log, ScheduleSnapshot before, ScheduleSnapshot after)
+	{
+		this.log = log;
+		this.after = after;
+		diff(before.getFlights(), after.getFlights());
+
+		DaySchedule schedule = new DaySchedule();
+		List<Flight> changed = new ArrayList<Flight>(added);
+		changed.addAll(removed);
+		for(String code : log.rowsByCode().keySet())
+		{
+			for(Flight flight : changed)
+			{
+				if(schedule.sharesBucket(code, flight.getAirlineCode()))
+				{
+					boolean[] days = affectedDays.computeIfAbsent(code, c -> new boolean[7]);
+					for(int day : flight.getDaysOfOperation())
+					{
+						days[day - 1] = true;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Sorts the flights that are only in one of the schedules into
+	 * added and removed. A flight whose details changed is in both.
+	 */
+	private void diff(List<Flight> oldFlights, List<Flight> newFlights)
+	{
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for(Flight flight : oldFlights)
+		{
+			counts.merge(String.join(",", flight.getRawData()), 1, Integer::sum);
+		}
+		for(Flight flight : newFlights)
+		{
+			String key = String.join(",", flight.getRawData());
+			Integer count = counts.get(key);
+			if(count == null || count == 0)
+			{
+				added.add(flight);
+			}
+			else
+			{
+				counts.put(key, count - 1);
+			}
+		}
+
+		Map<String, Integer> kept = new HashMap<String, Integer>();
+		for(Flight flight : newFlights)
+		{
+			kept.merge(String.join(",", flight.getRawData()), 1, Integer::sum);
+		}
+		for(Flight flight : oldFlights)
+		{
+			String key = String.join(",", flight.getRawData());
+			Integer count = kept.get(key);
+			if(count == null || count == 0)
+			{
+				removed.add(flight);
+			}
+			else
+			{
+				kept.put(key, count - 1);
+			}
+		}
+	}
+
+
+	/**
+	 * @param code
+	 * @param date
+	 * @return true if the airline's rows on that date must be billed again
+	 */
+	public boolean isAffected(String code, LocalDate date)
+	{
+		boolean[] days = affectedDays.get(code);
+		return days != null && days[date.getDayOfWeek().getValue() - 1];
+	}
+
+
+	/**
+	 * Re-bills the affected partitions and rewrites the report with
+	 * them, keeping every other section and row as it was.
+	 * @param reportFilepath
+	 * @return the charged rows of the updated report
+	 * @throws IOException if the report does not match the data file
+	 */
+	public ResultStore patch(String reportFilepath) throws IOException
+	{
+		String text = new String(Files.readAllBytes(Paths.get(reportFilepath)));
+		Map<String, List<String>> sections = readSections(text);
+		Map<String, int[]> airlineRows = log.rowsByCode();
+		DaySchedule[] schedules = after.getSchedules();
+
+		StringBuilder builder = new StringBuilder(text.substring(0, text.indexOf("\r\n") + 2));
+		for(Map.Entry<String, List<String>> section : sections.entrySet())
+		{
+			String code = section.getKey();
+			List<String> lines = section.getValue();
+			if(!affectedDays.containsKey(code))
+			{
+				for(String line : lines)
+				{
+					builder.append(line).append("\r\n");
+				}
+				builder.append("\r\n\r\n");
+				continue;
+			}
+
+			int[] rows = airlineRows.get(code);
+			if(rows == null)
+			{
+				throw new IOException(reportFilepath + " has airline " + code + ", which is not in the data file");
+			}
+			builder.append(rebill(code, rows, lines.subList(0, lines.size() - 1), schedules));
+		}
+
+		FileWriter writer = new FileWriter(reportFilepath);
+		try
+		{
+			writer.write(builder.toString());
+		}
+		finally
+		{
+			writer.close();
+		}
+		writeImpact();
+		return ResultStore.load(reportFilepath);
+	}
+
+
+	/**
+	 * Splits the report into its airline sections, in report order.
+	 * @return airline -> the section's rows followed by its total line
+	 */
+	private static Map<String, List<String>> readSections(String text) throws IOException
+	{
+		Map<String, List<String>> sections = new LinkedHashMap<String, List<String>>();
+		List<String> lines = new ArrayList<String>();
+		String[] all = text.split("\r\n");
+		for(int i = 1; i < all.length; i++)
+		{
+			if(all[i].isEmpty())
+			{
+				continue;
+			}
+			lines.add(all[i]);
+			if(all[i].startsWith(TOTAL_PREFIX))
+			{
+				String code = all[i].substring(TOTAL_PREFIX.length(), all[i].indexOf(": ,"));
+				sections.put(code, lines);
+				lines = new ArrayList<String>();
+			}
+		}
+		if(!lines.isEmpty())
+		{
+			throw new IOException("The report ends part way through an airline's section");
+		}
+		return sections;
+	}
+
+
+	/**
+	 * Rebuilds an affected airline's section. Rows on affected dates
+	 * are billed against the new schedule; the report lines of the
+	 * other dates are kept. Both are sorted back into report order.
+	 * @param code
+	 * @param rows the airline's rows in the log, in file order
+	 * @param oldLines the airline's charged lines in the old report
+	 * @param schedules
+	 * @return the section, ending with its total line
+	 */
+	private String rebill(String code, int[] rows, List<String> oldLines, DaySchedule[] schedules) throws IOException
+	{
+		ReportSorter sorter = new ReportSorter();
+		int total = 0;
+
+		// the old lines come first so that equal lines keep their order
+		for(String line : oldLines)
+		{
+			String[] fields = line.split(",");
+			LocalDate date = LocalDate.parse(fields[0].trim());
+			int charge = Integer.parseInt(fields[8].trim());
+			if(isAffected(code, date))
+			{
+				changes.computeIfAbsent(code + "," + date, k -> new int[2])[0] += charge;
+				continue;
+			}
+			total += charge;
+			sorter.add(date, fields[1].trim(), LocalTime.parse(fields[3].trim()), line + "\r\n");
+		}
+
+		for(int row : rows)
+		{
+			LocalDateTime dateTime = log.getLogin(row);
+			LocalDate date = dateTime.toLocalDate();
+			if(!isAffected(code, date))
+			{
+				continue;
+			}
+
+			rebilledRows++;
+			int duration = log.getDuration(row);
+			String[] chargedItems = schedules[dateTime.getDayOfWeek().getValue()-1].processStationRow(
+					log.getWorkstationClass(row), log.getCounter(row), code, dateTime, duration);
+			if(chargedItems != null && Integer.parseInt(chargedItems[6]) > 0)
+			{
+				int charge = Integer.parseInt(chargedItems[6]);
+				total += charge;
+				sorter.add(date, chargedItems[0], dateTime.toLocalTime(), Controller.formatRow(dateTime, duration, chargedItems));
+				changes.computeIfAbsent(code + "," + date, k -> new int[2])[1] += charge;
+			}
+		}
+
+		StringBuilder section = new StringBuilder();
+		sorter.mergeTo(section);
+		section.append(Controller.formatTotal(code, total));
+		return section.toString();
+	}
+
+
+	/**
+	 * Writes the partitions whose charges changed.
+	 */
+	private void writeImpact() throws IOException
+	{
+		FileWriter writer = new FileWriter(IMPACT_FILENAME);
+		try
+		{
+			writer.write("AIRLINE,DATE,OLD CHARGE,NEW CHARGE,DIFFERENCE\r\n");
+			for(Map.Entry<String, int[]> entry : changes.entrySet())
+			{
+				int[] charges = entry.getValue();
+				if(charges[0] != charges[1])
+				{
+					writer.write(entry.getKey() + "," + charges[0] + "," + charges[1] + "," + (charges[1] - charges[0]) + "\r\n");
+				}
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+
+	public List<Flight> getAdded() {
+		return added;
+	}
+
+
+	public List<Flight> getRemoved() {
+		return removed;
+	}
+
+
+	/**
+	 * @return the number of rows that were billed again
+	 */
+	public int getRebilledRows() {
+		return rebilledRows;
+	}
+
+
+	/**
+	 * Runs the update from the command line.
+	 * @param data the SITA file the report was billed from
+	 * @param oldSchedule the schedule the report was billed with
+	 * @param newSchedule
+	 */
+	public static void run(String data, String oldSchedule, String newSchedule) throws IOException
+	{
+		long start = System.nanoTime();
+		ScheduleSnapshot after = ScheduleSnapshot.read(newSchedule);
+		LoginRowReader reader = new LoginRowReader(data, null);
+		reader.setWorkstationClasses(after.getRules().getBilledClasses());
+		LoginLog log = reader.read();
+		ScheduleImpact impact = new ScheduleImpact(log, ScheduleSnapshot.read(oldSchedule), after);
+		ResultStore results = impact.patch(Controller.REPORT_FILENAME);
+
+		System.out.println(impact.getAdded().size() + " flights added, " + impact.getRemoved().size() + " removed; "
+				+ impact.affectedDays.size() + " airlines affected, " + impact.getRebilledRows() + " of " + log.size()
+				+ " rows billed again in " + (System.nanoTime() - start) / 1000000 + " ms");
+		for(Map.Entry<String, Long> total : results.totalsByAirline().entrySet())
+		{
+			if(impact.affectedDays.containsKey(total.getKey()))
+			{
+				System.out.println(total.getKey() + "," + total.getValue());
+			}
+		}
+		System.out.println("See " + IMPACT_FILENAME + " for the dates whose charges changed");
+	}
+}
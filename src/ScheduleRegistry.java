@@ -0,0 +1,65 @@
+/**
+ * This class holds the schedule that new billing runs should use.
+ * Runs take the current snapshot once, when they start, and keep 
+ * it to the end. Changes are made copy-on-write: a new snapshot is 
+ * built off to the side and swapped in atomically, so a run never 
+ * sees a schedule that is only partly built.
+ */
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+public class ScheduleRegistry {
+	private final AtomicReference<ScheduleSnapshot> current;
+
+
+	public ScheduleRegistry(ScheduleSnapshot initial)
+	{
+		current = new AtomicReference<ScheduleSnapshot>(initial);
+	}
+
+
+	/**
+	 * @return the snapshot that new billing runs should use
+	 */
+	public ScheduleSnapshot current()
+	{
+		return current.get();
+	}
+
+
+	/**
+	 * Replaces the whole schedule, e.g. with a newly read file.
+	 * @param snapshot
+	 * @return the snapshot that was replaced
+	 */
+	public ScheduleSnapshot replace(ScheduleSnapshot snapshot)
+	{
+		return current.getAndSet(snapshot);
+	}
+
+
+	/**
+	 * Applies a change to a copy of the current schedule and swaps 
+	 * the result in. If another change was swapped in meanwhile, the 
+	 * change is applied again to that newer schedule, so no change 
+	 * is lost.
+	 * @param change
+	 * @return the new snapshot
+	 */
+	public ScheduleSnapshot update(Consumer<ScheduleSnapshot.Builder> change)
+	{
+		while(true)
+		{
+			ScheduleSnapshot previous = current.get();
+			ScheduleSnapshot.Builder builder = previous.toBuilder();
+			change.accept(builder);
+			ScheduleSnapshot next = builder.build();
+			
+			if(current.compareAndSet(previous, next))
+			{
+				return next;
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * This class is a frozen copy of a month's flight schedule: the 
+ * sorted departures, the 7 daily schedules built from them and the 
+ * rules they were built with. None of it can be changed once the 
+ * snapshot has been built, so one snapshot can be shared by any 
+ * number of billing runs at the same time. To change a schedule, 
+ * copy it with toBuilder(), make the change and build a new snapshot.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+public final class ScheduleSnapshot {
+	private final List<Flight> flights; // sorted by departure time
+	private final DaySchedule[] schedules; // frozen, Monday to Sunday
+	private final BillingRules rules;
+
+
+	private ScheduleSnapshot(List<Flight> flights, BillingRules rules)
+	{
+		this.flights = Collections.unmodifiableList(flights);
+		this.rules = rules;
+		schedules = Controller.buildSchedules(flights, rules);
+		for(DaySchedule schedule : schedules)
+		{
+			schedule.freeze();
+		}
+	}
+
+
+	/**
+	 * @param scheduleFilepath
+	 * @return a snapshot of the departures in a schedule file, with the default rules
+	 */
+	public static ScheduleSnapshot read(String scheduleFilepath)
+	{
+		return new Builder().addFlights(Controller.readFlights(scheduleFilepath)).build();
+	}
+
+
+	/**
+	 * @param schedule an open stream of a schedule file, such as an upload
+	 * @return a snapshot of its departures, with the default rules
+	 * @throws IOException
+	 */
+	public static ScheduleSnapshot read(Reader schedule) throws IOException
+	{
+		return new Builder().addFlights(Controller.readFlights(schedule)).build();
+	}
+
+
+	public List<Flight> getFlights() {
+		return flights;
+	}
+
+
+	/**
+	 * @return the daily schedules, Monday to Sunday. The array is a 
+	 * copy; the schedules themselves cannot be changed.
+	 */
+	public DaySchedule[] getSchedules() {
+		return schedules.clone();
+	}
+
+
+	public BillingRules getRules() {
+		return rules;
+	}
+
+
+	/**
+	 * @return a builder holding this snapshot's departures and rules
+	 */
+	public Builder toBuilder()
+	{
+		return new Builder().addFlights(flights).setRules(rules);
+	}
+
+
+	/**
+	 * Collects departures for a new snapshot. A builder belongs to 
+	 * one thread; only the snapshot it builds is shared.
+	 */
+	public static class Builder {
+		private List<String[]> records = new ArrayList<String[]>(); // raw schedule rows of the departures
+		private BillingRules rules = BillingRules.DEFAULT;
+
+
+		public Builder addFlight(String[] record)
+		{
+			records.add(record.clone());
+			return this;
+		}
+
+
+		public Builder addFlights(Collection<Flight> flights)
+		{
+			for(Flight flight : flights)
+			{
+				records.add(flight.getRawData());
+			}
+			return this;
+		}
+
+
+		/**
+		 * Removes the departures that match the condition, 
+		 * e.g. every flight of one airline.
+		 */
+		public Builder removeFlights(Predicate<Flight> condition)
+		{
+			Iterator<String[]> iterator = records.iterator();
+			while(iterator.hasNext())
+			{
+				if(condition.test(new Flight(iterator.next())))
+				{
+					iterator.remove();
+				}
+			}
+			return this;
+		}
+
+
+		public Builder setRules(BillingRules rules)
+		{
+			this.rules = rules;
+			return this;
+		}
+
+
+		/**
+		 * @return a new snapshot with its own copies of the departures
+		 */
+		public ScheduleSnapshot build()
+		{
+			List<Flight> flights = new ArrayList<Flight>();
+			for(String[] record : records)
+			{
+				flights.add(new Flight(record.clone()));
+			}
+			Collections.sort(flights);
+			for(Flight flight : flights)
+			{
+				flight.freeze();
+			}
+			return new ScheduleSnapshot(flights, rules);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * This class sets up the window that shows each airline's total
+ * while a run is in progress: first the estimates from a sampled
+ * preview, with their 95% intervals, then the exact totals once the
+ * full run has finished.
+ */
+
+import java.awt.BorderLayout;
+import java.util.Map;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+
+public class TotalsWindow extends JFrame {
+	private DefaultTableModel model;
+	private JLabel statusLabel;
+
+
+	public TotalsWindow()
+	{
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		setTitle("Airline Totals");
+		setSize(420, 500);
+		setLocationRelativeTo(null);
+
+		model = new DefaultTableModel(new Object[] {"Airline", "Total", "95% interval"}, 0) {
+			public boolean isCellEditable(int row, int column)
+			{
+				return false;
+			}
+		};
+		add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+		statusLabel = new JLabel("Billing...");
+		add(statusLabel, BorderLayout.SOUTH);
+	}
+
+
+	/**
+	 * Shows the estimates of a sampled preview.
+	 * @param preview
+	 */
+	public void showEstimates(SampledPreview preview)
+	{
+		model.setRowCount(0);
+		for(String code : preview.getAirlines())
+		{
+			long estimate = preview.getEstimate(code);
+			long margin = preview.getMargin(code);
+			model.addRow(new Object[] {code, "~" + estimate,
+					Math.max(0, estimate - margin) + " to " + (estimate + margin)});
+		}
+		statusLabel.setText("Estimated from " + preview.getSampledRows() + " of " + preview.getRows()
+				+ " rows; the full run is still billing...");
+	}
+
+
+	/**
+	 * Replaces any estimates with the exact totals of the full run.
+	 * @param totals by airline code
+	 */
+	public void showExact(Map<String, Long> totals)
+	{
+		model.setRowCount(0);
+		long sum = 0;
+		for(Map.Entry<String, Long> total : totals.entrySet())
+		{
+			model.addRow(new Object[] {total.getKey(), total.getValue(), ""});
+			sum += total.getValue();
+		}
+		statusLabel.setText("Exact totals, " + sum + " in all");
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * This class measures how the counters and gates are used over 
+ * the month from the same line items that are billed.
+ * 
+ * Every session is recorded as a +1 at its login minute and a -1 
+ * at its logout minute in a difference array covering each minute 
+ * of the month, one array per counter and one per airline. A single 
+ * prefix sum over each array then gives the number of sessions open 
+ * at every minute, so the whole analysis is linear in the number of 
+ * rows plus the number of minutes in the month.
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UtilizationAnalyzer {
+	private static final int MINUTESPERDAY = 24 * 60;
+	
+	private YearMonth month;
+	private LocalDateTime monthStart;
+	private int minutes; // minutes in the month plus one day for sessions running past the end
+	private Map<String, int[]> counterDiffs = new HashMap<String, int[]>();
+	private Map<String, int[]> airlineDiffs = new HashMap<String, int[]>();
+	private int skipped; // sessions that started outside the month
+	private boolean finished;
+	
+	
+	/**
+	 * @param month the month of the export, e.g. from LoginLog.getMonth(); 
+	 * sessions that start outside it are skipped, as are all sessions 
+	 * if it is null
+	 */
+	public UtilizationAnalyzer(YearMonth month)
+	{
+		this.month = month;
+		if(month != null)
+		{
+			monthStart = month.atDay(1).atStartOfDay();
+			minutes = (month.lengthOfMonth() + 1) * MINUTESPERDAY;
+		}
+	}
+	
+	
+	/**
+	 * Records a logged in session.
+	 * @param counter the counter or gate name
+	 * @param code the airline code
+	 * @param login
+	 * @param duration logged in minutes
+	 */
+	public void record(String counter, String code, LocalDateTime login, int duration)
+	{
+		if(month == null)
+		{
+			skipped++;
+			return;
+		}
+		int start = (int)monthStart.until(login, ChronoUnit.MINUTES);
+		if(start < 0 || start >= month.lengthOfMonth() * MINUTESPERDAY || duration <= 0)
+		{
+			skipped++;
+			return;
+		}
+		int end = Math.min(start + duration, minutes);
+		
+		mark(counterDiffs, counter, start, end);
+		mark(airlineDiffs, code, start, end);
+	}
+	
+	
+	private void mark(Map<String, int[]> diffs, String key, int start, int end)
+	{
+		int[] diff = diffs.get(key);
+		if(diff == null)
+		{
+			diff = new int[minutes + 1];
+			diffs.put(key, diff);
+		}
+		diff[start]++;
+		diff[end]--;
+	}
+	
+	
+	/**
+	 * Turns every difference array into the number of open 
+	 * sessions at each minute. Called once, after the last row.
+	 */
+	private void finish()
+	{
+		if(finished)
+		{
+			return;
+		}
+		for(int[] diff : counterDiffs.values())
+		{
+			prefixSum(diff);
+		}
+		for(int[] diff : airlineDiffs.values())
+		{
+			prefixSum(diff);
+		}
+		finished = true;
+	}
+	
+	
+	private static void prefixSum(int[] diff)
+	{
+		for(int i = 1; i < diff.length; i++)
+		{
+			diff[i] += diff[i-1];
+		}
+	}
+	
+	
+	/**
+	 * Builds a heatmap of the share of each hour of the day that 
+	 * each counter was occupied, over all the days of the month.
+	 * @return CSV text with a row per counter and a column per hour
+	 */
+	public String getHeatmap()
+	{
+		finish();
+		StringBuilder builder = new StringBuilder(String.format("%-14s", "COUNTER"));
+		for(int hour = 0; hour < 24; hour++)
+		{
+			builder.append(String.format(",%02d:00", hour));
+		}
+		builder.append("\r\n");
+		
+		List<String> counters = new ArrayList<String>(counterDiffs.keySet());
+		Collections.sort(counters, ResultStore.COUNTER_ORDER);
+		int days = (month == null) ? 0 : month.lengthOfMonth();
+		
+		for(String counter : counters)
+		{
+			int[] open = counterDiffs.get(counter);
+			int[] occupied = new int[24];
+			for(int minute = 0; minute < days * MINUTESPERDAY; minute++)
+			{
+				if(open[minute] > 0)
+				{
+					occupied[(minute % MINUTESPERDAY) / 60]++;
+				}
+			}
+			
+			builder.append(String.format("%-14s", counter));
+			for(int hour = 0; hour < 24; hour++)
+			{
+				builder.append(String.format(",%5.1f", 100.0 * occupied[hour] / (days * 60)));
+			}
+			builder.append("\r\n");
+		}
+		return builder.toString();
+	}
+	
+	
+	/**
+	 * Finds, for each hour of the month, the largest number of 
+	 * airlines logged in at once and the largest number of 
+	 * counters and gates in use at once.
+	 * @return CSV text with a row per hour that had any sessions
+	 */
+	public String getPeaks()
+	{
+		finish();
+		StringBuilder builder = new StringBuilder(String.format("%-12s,%-6s,%-16s,%-10s,%-16s\r\n", 
+				"DATE", "HOUR", "PEAK AIRLINES", "AT", "PEAK COUNTERS"));
+		if(month == null)
+		{
+			return builder.toString();
+		}
+		
+		int[] airlinesOpen = countPositive(airlineDiffs);
+		int[] countersOpen = countPositive(counterDiffs);
+		
+		for(int hourStart = 0; hourStart < month.lengthOfMonth() * MINUTESPERDAY; hourStart += 60)
+		{
+			int peakAirlines = 0;
+			int peakAt = hourStart;
+			int peakCounters = 0;
+			for(int minute = hourStart; minute < hourStart + 60; minute++)
+			{
+				if(airlinesOpen[minute] > peakAirlines)
+				{
+					peakAirlines = airlinesOpen[minute];
+					peakAt = minute;
+				}
+				peakCounters = Math.max(peakCounters, countersOpen[minute]);
+			}
+			
+			if(peakAirlines > 0)
+			{
+				LocalDateTime at = monthStart.plusMinutes(peakAt);
+				builder.append(String.format("%-12s,%-6s,%-16d,%-10s,%-16d\r\n", at.toLocalDate(), 
+						String.format("%02d", at.getHour()), peakAirlines, at.toLocalTime(), peakCounters));
+			}
+		}
+		return builder.toString();
+	}
+	
+	
+	/**
+	 * @return for each minute, how many of the arrays have an open session
+	 */
+	private int[] countPositive(Map<String, int[]> openSessions)
+	{
+		int[] count = new int[minutes];
+		for(int[] open : openSessions.values())
+		{
+			for(int minute = 0; minute < minutes; minute++)
+			{
+				if(open[minute] > 0)
+				{
+					count[minute]++;
+				}
+			}
+		}
+		return count;
+	}
+	
+	
+	/**
+	 * Writes the heatmap to Utilization.csv and the hourly peaks 
+	 * to Peaks.csv in the working directory.
+	 */
+	public void writeReports()
+	{
+		write("Utilization.csv", getHeatmap());
+		write("Peaks.csv", getPeaks());
+	}
+	
+	
+	/**
+	 * @return the number of sessions left out because they did not 
+	 * start in the month of the export
+	 */
+	public int getSkipped()
+	{
+		return skipped;
+	}
+	
+	
+	private void write(String filename, String contents)
+	{
+		try
+		{
+			FileWriter writer = new FileWriter(filename);
+			writer.write(contents);
+			writer.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
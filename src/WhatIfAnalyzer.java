@@ -0,0 +1,116 @@
+/**
+ * This class answers "what if" questions about the billing rules.
+ * The schedule and the SITA report are parsed once and kept in 
+ * memory; each scenario only rebuilds the 7 daily schedules with 
+ * its own BillingRules and re-bills the parsed line items, so 
+ * several scenarios can be compared side by side without 
+ * reading either file again.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class WhatIfAnalyzer {
+	private List<Flight> flights;
+	private LoginLog log;
+	private long[] elapsed = new long[0]; // nanoseconds taken by each scenario of the last comparison
+
+
+	public WhatIfAnalyzer(String data, String schedule) throws IOException
+	{
+		this(Controller.readFlights(schedule), LoginLog.read(data));
+	}
+
+
+	public WhatIfAnalyzer(List<Flight> flights, LoginLog log)
+	{
+		this.flights = flights;
+		this.log = log;
+	}
+
+
+	/**
+	 * Bills the whole log under the given rules. As in the report,
+	 * gate rows are only charged if the rules bill gates.
+	 * @param rules
+	 * @return total charge for each airline code in the log
+	 */
+	public Map<String, Integer> bill(BillingRules rules)
+	{
+		DaySchedule[] schedules = Controller.buildSchedules(flights, rules);
+		Map<String, Integer> totals = new TreeMap<String, Integer>();
+
+		for(int row = 0; row < log.size(); row++)
+		{
+			String code = log.getCode(row);
+			int dayOfWeek = log.getLogin(row).getDayOfWeek().getValue()-1;
+			String[] chargedItems = schedules[dayOfWeek].processStationRow(log.getWorkstationClass(row), 
+					log.getCounter(row), code, log.getLogin(row), log.getDuration(row));
+			
+			int charge = 0;
+			if(chargedItems != null)
+			{
+				charge = Math.max(Integer.parseInt(chargedItems[6]), 0);
+			}
+			Integer total = totals.get(code);
+			totals.put(code, (total == null ? 0 : total) + charge);
+		}
+		return totals;
+	}
+
+
+	/**
+	 * Bills each scenario and lays out the airline totals with one 
+	 * column per scenario.
+	 * @param scenarios
+	 * @return CSV text with a row per airline and a final row of totals
+	 */
+	public String compare(List<BillingRules> scenarios)
+	{
+		List<Map<String, Integer>> results = new ArrayList<Map<String, Integer>>();
+		StringBuilder builder = new StringBuilder(String.format("%-10s", "AIRLINE"));
+		elapsed = new long[scenarios.size()];
+		
+		for(BillingRules rules : scenarios)
+		{
+			long start = System.nanoTime();
+			results.add(bill(rules));
+			elapsed[results.size() - 1] = System.nanoTime() - start;
+			builder.append(String.format(",%-12s", rules.getLabel()));
+		}
+		builder.append("\r\n");
+		
+		long[] grandTotals = new long[scenarios.size()];
+		for(String code : results.get(0).keySet())
+		{
+			builder.append(String.format("%-10s", code));
+			for(int i = 0; i < results.size(); i++)
+			{
+				builder.append(String.format(",%-12d", results.get(i).get(code)));
+				grandTotals[i] += results.get(i).get(code);
+			}
+			builder.append("\r\n");
+		}
+		
+		builder.append(String.format("%-10s", "TOTAL"));
+		for(long total : grandTotals)
+		{
+			builder.append(String.format(",%-12d", total));
+		}
+		builder.append("\r\n");
+		return builder.toString();
+	}
+
+
+	/**
+	 * @return the time taken to bill each scenario of the last call 
+	 * to compare(), in nanoseconds and in scenario order
+	 */
+	public long[] getElapsedNanos()
+	{
+		return elapsed.clone();
+	}
+}
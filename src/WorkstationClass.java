@@ -0,0 +1,43 @@
+/**
+ * This enum sorts workstations into the kinds that are billed
+ * differently: check-in counters, boarding gates and anything else.
+ *
+ * SITA workstation names carry the kind after the airport, e.g.
+ * GND1CKB001 is a check-in counter and GND1GTG001 is a gate.
+ */
+
+public enum WorkstationClass {
+	CHECK_IN, GATE, OTHER;
+
+	private static final int TYPESTART = 4; // after the airport, e.g. GND1
+
+
+	/**
+	 * @param workstation a SITA workstation name
+	 * @return the kind of workstation its name shows
+	 */
+	public static WorkstationClass of(String workstation)
+	{
+		if(workstation.startsWith("GTG", TYPESTART))
+		{
+			return GATE;
+		}
+		if(workstation.startsWith("CK", TYPESTART))
+		{
+			return CHECK_IN;
+		}
+		return OTHER;
+	}
+
+
+	/**
+	 * @param text a class as written in a config file or on the
+	 * command line, e.g. gate or check-in
+	 * @return the class
+	 * @throws IllegalArgumentException if the text names no class
+	 */
+	public static WorkstationClass parse(String text)
+	{
+		return valueOf(text.trim().toUpperCase().replace('-', '_'));
+	}
+}
@@ -0,0 +1,356 @@
+/**
+ * This class maps workstation names from the SITA report to the
+ * counter or gate they belong to, for any number of airports.
+ *
+ * The map is read from a config file with one workstation per line:
+ *
+ *   # workstation,counter or gate name[,check-in|gate|other]
+ *   GND1CKB001,Counter 1
+ *   ANU1GTG002,ANU Gate 2
+ *   ANU1BAG001,ANU Bag Drop 1,check-in
+ *
+ * The class of a workstation is taken from its name (see
+ * WorkstationClass) unless the third column gives it.
+ * Without a config file the GND1 check-in counters and gates are used.
+ *
+ * The workstation names are compiled into a minimal-collision
+ * lookup table using hash and displace: names are first hashed into
+ * small buckets, then each bucket is given its own seed for a second
+ * hash that sends all of its names to free slots. A lookup is
+ * therefore two hashes and one comparison, and it works directly on
+ * the characters of a line so no String has to be created for it.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class WorkstationMap {
+	public static final String INVALID = "Invalid workstation";
+	public static final String CONFIG_FILENAME = "workstations.csv";
+	private static WorkstationMap defaultMap;
+
+	private String[] workstations; // indexed by workstation id
+	private String[] names; // counter or gate name, indexed by workstation id
+	private WorkstationClass[] classes; // indexed by workstation id
+	private char[][] keys; // workstation name characters, indexed by slot
+	private int[] ids; // workstation id of each slot, -1 if empty
+	private int[] seeds; // second hash seed of each bucket
+	private int mask; // number of slots - 1
+
+
+	/**
+	 * Compiles the lookup table for the given workstations.
+	 * @param mapping workstation name -> counter or gate name
+	 * @throws IllegalArgumentException if a seed cannot be found for a bucket
+	 */
+	public WorkstationMap(Map<String, String> mapping)
+	{
+		this(mapping, Collections.<String, WorkstationClass>emptyMap());
+	}
+
+
+	/**
+	 * Compiles the lookup table for the given workstations.
+	 * @param mapping workstation name -> counter or gate name
+	 * @param classOverrides workstation name -> class, for workstations
+	 * whose class does not follow from their name
+	 * @throws IllegalArgumentException if a seed cannot be found for a bucket
+	 */
+	public WorkstationMap(Map<String, String> mapping, Map<String, WorkstationClass> classOverrides)
+	{
+		int n = mapping.size();
+		workstations = mapping.keySet().toArray(new String[n]);
+		names = mapping.values().toArray(new String[n]);
+		classes = new WorkstationClass[n];
+		for(int id = 0; id < n; id++)
+		{
+			WorkstationClass override = classOverrides.get(workstations[id]);
+			classes[id] = (override != null) ? override : WorkstationClass.of(workstations[id]);
+		}
+
+		int slots = Integer.highestOneBit(Math.max(2, n) * 2 - 1) * 2; // power of two of at least 2n
+		mask = slots - 1;
+		keys = new char[slots][];
+		ids = new int[slots];
+		Arrays.fill(ids, -1);
+		seeds = new int[Math.max(1, n / 4)];
+
+		// put each workstation in a bucket, then place the biggest buckets first
+		List<List<Integer>> buckets = new ArrayList<List<Integer>>();
+		for(int b = 0; b < seeds.length; b++)
+		{
+			buckets.add(new ArrayList<Integer>());
+		}
+		for(int id = 0; id < n; id++)
+		{
+			buckets.get(bucket(workstations[id], 0, workstations[id].length())).add(id);
+		}
+		Integer[] order = new Integer[seeds.length];
+		for(int b = 0; b < order.length; b++)
+		{
+			order[b] = b;
+		}
+		Arrays.sort(order, Comparator.comparingInt((Integer b) -> buckets.get(b).size()).reversed());
+
+		for(int b : order)
+		{
+			placeBucket(b, buckets.get(b));
+		}
+	}
+
+
+	/**
+	 * Finds a seed that sends every workstation in the bucket to a
+	 * different free slot, and fills those slots.
+	 */
+	private void placeBucket(int bucket, List<Integer> members)
+	{
+		int[] chosen = new int[members.size()];
+		for(int seed = 1; seed < 1 << 20; seed++)
+		{
+			boolean fits = true;
+			for(int i = 0; i < members.size() && fits; i++)
+			{
+				String workstation = workstations[members.get(i)];
+				chosen[i] = hash(workstation, 0, workstation.length(), seed) & mask;
+				fits = ids[chosen[i]] < 0;
+				for(int j = 0; j < i && fits; j++)
+				{
+					fits = chosen[j] != chosen[i];
+				}
+			}
+
+			if(fits)
+			{
+				seeds[bucket] = seed;
+				for(int i = 0; i < members.size(); i++)
+				{
+					ids[chosen[i]] = members.get(i);
+					keys[chosen[i]] = workstations[members.get(i)].toCharArray();
+				}
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Could not build the workstation table for bucket " + bucket);
+	}
+
+
+	/**
+	 * Reads a workstation config file.
+	 * @param configFilepath
+	 * @return the compiled map
+	 * @throws IOException
+	 */
+	public static WorkstationMap read(String configFilepath) throws IOException
+	{
+		Map<String, String> mapping = new LinkedHashMap<String, String>();
+		Map<String, WorkstationClass> classOverrides = new LinkedHashMap<String, WorkstationClass>();
+		BufferedReader reader = new BufferedReader(new FileReader(configFilepath));
+		try
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.isEmpty() || line.charAt(0) == '#')
+				{
+					continue;
+				}
+				String[] fields = line.split(",");
+				if(fields.length < 2)
+				{
+					throw new IOException("Expected workstation,name but got " + line);
+				}
+				mapping.put(fields[0].trim(), fields[1].trim());
+				if(fields.length > 2)
+				{
+					try
+					{
+						classOverrides.put(fields[0].trim(), WorkstationClass.parse(fields[2]));
+					}
+					catch(IllegalArgumentException e)
+					{
+						throw new IOException("Expected check-in, gate or other but got " + line);
+					}
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return new WorkstationMap(mapping, classOverrides);
+	}
+
+
+	/**
+	 * Returns the map used when none is given: the file named by the
+	 * cbs.workstations system property, or workstations.csv in the
+	 * working directory, or the built-in GND1 layout.
+	 */
+	public static synchronized WorkstationMap getDefault()
+	{
+		if(defaultMap == null)
+		{
+			String configFilepath = System.getProperty("cbs.workstations", CONFIG_FILENAME);
+			defaultMap = gnd1();
+			if(new File(configFilepath).isFile())
+			{
+				try
+				{
+					defaultMap = read(configFilepath);
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+		return defaultMap;
+	}
+
+
+	/**
+	 * @return the GND1 layout: 15 counters with two workstations
+	 * each (CKB odd, CKR even) and 6 gates
+	 */
+	static WorkstationMap gnd1()
+	{
+		Map<String, String> mapping = new LinkedHashMap<String, String>();
+		for(int i = 1; i <= 30; i++)
+		{
+			mapping.put(String.format("GND1%s%03d", (i % 2 == 1) ? "CKB" : "CKR", i), "Counter " + ((i + 1) / 2));
+		}
+		for(int i = 1; i <= 6; i++)
+		{
+			mapping.put(String.format("GND1GTG%03d", i), "Gate " + i);
+		}
+		return new WorkstationMap(mapping);
+	}
+
+
+	/**
+	 * Finds the workstation whose name is the given run of characters.
+	 * @param text e.g. a line of the SITA report
+	 * @param start
+	 * @param end
+	 * @return the workstation id, or -1 if it is not in the map
+	 */
+	public int lookup(CharSequence text, int start, int end)
+	{
+		int slot = hash(text, start, end, seeds[bucket(text, start, end)]) & mask;
+		char[] key = keys[slot];
+		if(key == null || key.length != end - start)
+		{
+			return -1;
+		}
+		for(int i = 0; i < key.length; i++)
+		{
+			if(key[i] != text.charAt(start + i))
+			{
+				return -1;
+			}
+		}
+		return ids[slot];
+	}
+
+
+	/**
+	 * @param workstation
+	 * @return the counter or gate name, or "Invalid workstation"
+	 */
+	public String getName(String workstation)
+	{
+		int id = lookup(workstation, 0, workstation.length());
+		return (id < 0) ? INVALID : names[id];
+	}
+
+
+	/**
+	 * @param id
+	 * @return the counter or gate name of a workstation id
+	 */
+	public String getName(int id)
+	{
+		return (id < 0) ? INVALID : names[id];
+	}
+
+
+	/**
+	 * @param id
+	 * @return the class of a workstation id; unknown workstations are OTHER
+	 */
+	public WorkstationClass getWorkstationClass(int id)
+	{
+		return (id < 0) ? WorkstationClass.OTHER : classes[id];
+	}
+
+
+	/**
+	 * @param id
+	 * @return the workstation name of a workstation id
+	 */
+	public String getWorkstation(int id)
+	{
+		return workstations[id];
+	}
+
+
+	/**
+	 * @return every workstation with its counter or gate name and its 
+	 * class, one per line in workstation order, so that two maps that 
+	 * resolve workstations alike describe themselves alike
+	 */
+	public String describe()
+	{
+		String[] lines = new String[workstations.length];
+		for(int id = 0; id < lines.length; id++)
+		{
+			lines[id] = workstations[id] + "," + names[id] + "," + classes[id] + "\n";
+		}
+		Arrays.sort(lines);
+		return String.join("", lines);
+	}
+
+
+	/**
+	 * @return the number of workstations in the map
+	 */
+	public int size()
+	{
+		return workstations.length;
+	}
+
+
+	private int bucket(CharSequence text, int start, int end)
+	{
+		return (hash(text, start, end, 0) & 0x7FFFFFFF) % seeds.length;
+	}
+
+
+	/**
+	 * FNV-1a over the characters, seeded, with a final mix so that
+	 * the low bits depend on every character.
+	 */
+	private static int hash(CharSequence text, int start, int end, int seed)
+	{
+		int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+		for(int i = start; i < end; i++)
+		{
+			h = (h ^ text.charAt(i)) * 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+}
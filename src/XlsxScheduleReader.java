@@ -0,0 +1,314 @@
+/**
+ * This class reads the rows of an Excel (.xlsx) schedule so that it
+ * can be loaded without first being converted to CSV.
+ *
+ * An .xlsx file is a zip of XML parts. The first worksheet is
+ * streamed straight out of the zip with the JDK's StAX parser, one
+ * row at a time, so the sheet is never held in memory as a whole.
+ * Each row is handed on as the same String[] that a line of the CSV
+ * schedule would split into. Only the shared strings table, which
+ * cells refer to by index, is kept in memory.
+ *
+ * Excel keeps dates and times as serial numbers, so the departure
+ * time and the start and end date columns are turned back into the
+ * H:mm:ss and M/d/yyyy text that Flight expects.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+public class XlsxScheduleReader {
+	private static final int COLUMNS = 49; // a schedule row has at least columns 0 to 48
+	private static final int TIMECOL = 46;
+	private static final int STARTDATECOL = 47;
+	private static final int ENDDATECOL = 48;
+	private static final LocalDate EXCEL_EPOCH = LocalDate.of(1899, 12, 30); // serial day 0
+	private static final DateTimeFormatter DATEFORMAT = DateTimeFormatter.ofPattern("M/d/yyyy");
+
+	private ZipFile zip;
+	private XMLInputFactory factory;
+	private List<String> sharedStrings = new ArrayList<String>();
+
+
+	public XlsxScheduleReader(String xlsxFilepath) throws IOException
+	{
+		zip = new ZipFile(xlsxFilepath);
+		factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+
+	/**
+	 * @param filepath
+	 * @return true if the file should be read as a workbook rather than as CSV
+	 */
+	public static boolean isWorkbook(String filepath)
+	{
+		return filepath.toLowerCase().endsWith(".xlsx");
+	}
+
+
+	/**
+	 * Streams every row of the first worksheet to the consumer, in
+	 * sheet order. Empty cells are given as empty strings.
+	 * @param rows
+	 * @throws IOException if the file is not a readable workbook
+	 */
+	public void read(Consumer<String[]> rows) throws IOException
+	{
+		try
+		{
+			readSharedStrings();
+			ZipEntry sheet = zip.getEntry(firstSheetPath());
+			if(sheet == null)
+			{
+				throw new IOException("The workbook has no worksheet");
+			}
+			readSheet(sheet, rows);
+		}
+		catch(XMLStreamException e)
+		{
+			throw new IOException("The workbook could not be read", e);
+		}
+		finally
+		{
+			zip.close();
+		}
+	}
+
+
+	/**
+	 * Loads the table of strings that text cells refer to by index.
+	 */
+	private void readSharedStrings() throws IOException, XMLStreamException
+	{
+		ZipEntry entry = zip.getEntry("xl/sharedStrings.xml");
+		if(entry == null)
+		{
+			return;
+		}
+
+		InputStream in = zip.getInputStream(entry);
+		XMLStreamReader xml = factory.createXMLStreamReader(in);
+		try
+		{
+			StringBuilder text = null;
+			while(xml.hasNext())
+			{
+				int event = xml.next();
+				if(event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("si"))
+				{
+					text = new StringBuilder();
+				}
+				else if(event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("t") && text != null)
+				{
+					// rich text splits a string into several runs of <t>
+					text.append(xml.getElementText());
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("si"))
+				{
+					sharedStrings.add(text.toString());
+					text = null;
+				}
+			}
+		}
+		finally
+		{
+			xml.close();
+			in.close();
+		}
+	}
+
+
+	/**
+	 * Follows the workbook's relationships to the part holding the
+	 * first sheet, falling back to the usual name.
+	 */
+	private String firstSheetPath() throws IOException, XMLStreamException
+	{
+		String relationId = null;
+		ZipEntry workbook = zip.getEntry("xl/workbook.xml");
+		ZipEntry relations = zip.getEntry("xl/_rels/workbook.xml.rels");
+		if(workbook == null || relations == null)
+		{
+			return "xl/worksheets/sheet1.xml";
+		}
+
+		XMLStreamReader xml = factory.createXMLStreamReader(zip.getInputStream(workbook));
+		while(xml.hasNext() && relationId == null)
+		{
+			if(xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("sheet"))
+			{
+				for(int i = 0; i < xml.getAttributeCount(); i++)
+				{
+					if(xml.getAttributeLocalName(i).equals("id"))
+					{
+						relationId = xml.getAttributeValue(i);
+					}
+				}
+			}
+		}
+		xml.close();
+
+		xml = factory.createXMLStreamReader(zip.getInputStream(relations));
+		while(xml.hasNext())
+		{
+			if(xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("Relationship")
+					&& relationId != null && relationId.equals(xml.getAttributeValue(null, "Id")))
+			{
+				String target = xml.getAttributeValue(null, "Target");
+				xml.close();
+				return target.startsWith("/") ? target.substring(1) : "xl/" + target;
+			}
+		}
+		xml.close();
+		return "xl/worksheets/sheet1.xml";
+	}
+
+
+	/**
+	 * Streams the rows of a worksheet part.
+	 */
+	private void readSheet(ZipEntry sheet, Consumer<String[]> rows) throws IOException, XMLStreamException
+	{
+		InputStream in = zip.getInputStream(sheet);
+		XMLStreamReader xml = factory.createXMLStreamReader(in);
+		try
+		{
+			String[] row = null;
+			int column = -1;
+			int nextColumn = 0; // for cells without a reference
+			String type = null;
+			String value = null;
+
+			while(xml.hasNext())
+			{
+				int event = xml.next();
+				if(event == XMLStreamConstants.START_ELEMENT)
+				{
+					String name = xml.getLocalName();
+					if(name.equals("row"))
+					{
+						row = new String[COLUMNS];
+						nextColumn = 0;
+					}
+					else if(name.equals("c"))
+					{
+						String reference = xml.getAttributeValue(null, "r");
+						column = (reference == null) ? nextColumn : columnIndex(reference);
+						nextColumn = column + 1;
+						type = xml.getAttributeValue(null, "t");
+						value = null;
+					}
+					else if(name.equals("v"))
+					{
+						value = xml.getElementText();
+					}
+					else if(name.equals("t") && "inlineStr".equals(type))
+					{
+						value = (value == null ? "" : value) + xml.getElementText();
+					}
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT)
+				{
+					String name = xml.getLocalName();
+					if(name.equals("c") && value != null)
+					{
+						if(column >= row.length)
+						{
+							row = Arrays.copyOf(row, column + 1);
+						}
+						row[column] = cellText(column, type, value);
+					}
+					else if(name.equals("row"))
+					{
+						for(int i = 0; i < row.length; i++)
+						{
+							if(row[i] == null)
+							{
+								row[i] = "";
+							}
+						}
+						rows.accept(row);
+					}
+				}
+			}
+		}
+		finally
+		{
+			xml.close();
+			in.close();
+		}
+	}
+
+
+	/**
+	 * Turns a cell's stored value into the text the CSV would hold.
+	 */
+	private String cellText(int column, String type, String value)
+	{
+		if("s".equals(type))
+		{
+			return sharedStrings.get(Integer.parseInt(value));
+		}
+		if(type != null && !type.equals("n"))
+		{
+			return value; // inline strings, formula strings and booleans
+		}
+
+		double number;
+		try
+		{
+			number = Double.parseDouble(value);
+		}
+		catch(NumberFormatException e)
+		{
+			return value;
+		}
+
+		if(column == TIMECOL)
+		{
+			// the fraction of the day, ignoring any date part
+			long seconds = Math.round((number - Math.floor(number)) * 24 * 60 * 60) % (24 * 60 * 60);
+			return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+		}
+		if(column == STARTDATECOL || column == ENDDATECOL)
+		{
+			return EXCEL_EPOCH.plusDays((long)Math.floor(number)).format(DATEFORMAT);
+		}
+		if(number == Math.rint(number) && Math.abs(number) < 1e15)
+		{
+			return Long.toString((long)number); // e.g. days of operation stored as 1357
+		}
+		return value;
+	}
+
+
+	/**
+	 * @param reference a cell reference such as AQ12
+	 * @return the zero based column index, e.g. 42 for AQ
+	 */
+	private static int columnIndex(String reference)
+	{
+		int column = 0;
+		for(int i = 0; i < reference.length() && Character.isLetter(reference.charAt(i)); i++)
+		{
+			column = column * 26 + (Character.toUpperCase(reference.charAt(i)) - 'A' + 1);
+		}
+		return column - 1;
+	}
+}